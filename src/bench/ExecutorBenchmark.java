@@ -0,0 +1,135 @@
+package bench;
+
+import com.sun.net.httpserver.HttpServer;
+import model.*;
+import server.ServerExecutors;
+import utils.JsonDataManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checkout-style load against each request executor mode. Every request
+ * places an order through the real persistence path, so with group commit
+ * each handler blocks until its fsync; that blocking is what separates a
+ * ten-thread pool from thread-per-request.
+ *
+ * Usage: java bench.ExecutorBenchmark [requestsPerClient] [clients...]
+ */
+public class ExecutorBenchmark {
+    private static final List<String> MODES = List.of("fixed", "workstealing", "virtual");
+
+    public static void main(String[] args) throws Exception {
+        int perClient = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        List<Integer> clientCounts = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            clientCounts.add(Integer.parseInt(args[i]));
+        }
+        if (clientCounts.isEmpty()) {
+            clientCounts = List.of(10, 50, 200);
+        }
+        // Keep client connections alive instead of reconnecting past the default five
+        System.setProperty("http.maxConnections", "1000");
+        // Without it small responses wait out delayed ACKs and every mode reads ~40 ms
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+
+        System.out.printf("%-13s %8s %10s %10s %10s %10s%n", "executor", "clients", "req/s", "p50 ms", "p99 ms", "max ms");
+        for (int clients : clientCounts) {
+            for (String mode : MODES) {
+                Path dir = Files.createTempDirectory("executor-bench-" + mode);
+                try {
+                    run(mode, dir, clients, perClient);
+                } finally {
+                    deleteRecursively(dir);
+                }
+            }
+        }
+    }
+
+    private static void run(String mode, Path dir, int clients, int perClient) throws Exception {
+        JsonDataManager store = JsonDataManager.open("json", dir);
+        store.saveProduct(new Product(0, "Denim Jacket", 35, "Preloved", 100, "men", "Jackets",
+                "asset/jacket.jpg", List.of("denim")));
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        ExecutorService executor = ServerExecutors.create(mode, 10);
+        AtomicInteger users = new AtomicInteger();
+        server.createContext("/checkout", exchange -> {
+            Order order = new Order(0, 1 + users.incrementAndGet() % 1000);
+            order.setOrderDate("2025-01-14T18:36:03");
+            order.addItem(new CartItem(1, 1, 35, "Denim Jacket", "asset/jacket.jpg"));
+            store.saveOrder(order);
+            byte[] body = ("{\"orderId\":" + order.getId() + "}").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+        URL url = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/checkout").toURL();
+
+        // Warm up, then measure
+        request(url);
+        long[] latencies = new long[clients * perClient];
+        ExecutorService load = Executors.newFixedThreadPool(clients);
+        CountDownLatch ready = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            int offset = c * perClient;
+            futures.add(load.submit(() -> {
+                ready.await();
+                for (int i = 0; i < perClient; i++) {
+                    long start = System.nanoTime();
+                    request(url);
+                    latencies[offset + i] = System.nanoTime() - start;
+                }
+                return null;
+            }));
+        }
+        long start = System.nanoTime();
+        ready.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        load.shutdown();
+        server.stop(0);
+        executor.shutdown();
+        store.close();
+
+        Arrays.sort(latencies);
+        System.out.printf("%-13s %8d %10.0f %10.2f %10.2f %10.2f%n", mode, clients, latencies.length / seconds,
+                percentile(latencies, 0.50), percentile(latencies, 0.99), latencies[latencies.length - 1] / 1e6);
+    }
+
+    private static void request(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        if (connection.getResponseCode() != 200) {
+            throw new IOException("HTTP " + connection.getResponseCode());
+        }
+        try (InputStream in = connection.getInputStream()) {
+            in.readAllBytes();
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1e6;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (var paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
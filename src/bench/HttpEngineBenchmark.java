@@ -0,0 +1,176 @@
+package bench;
+
+import com.sun.net.httpserver.HttpServer;
+import server.NioHttpServer;
+import server.ServerExecutors;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A/B of the JDK HTTP server against {@link NioHttpServer}, both serving the
+ * same catalog-sized JSON body from a ten-thread fixed pool. Keep-alive
+ * clients measure throughput and latency; the pipelined run writes a batch
+ * of requests per round trip on one socket and counts completed responses.
+ *
+ * Usage: java bench.HttpEngineBenchmark [requestsPerClient] [clients...]
+ */
+public class HttpEngineBenchmark {
+    private static final List<String> ENGINES = List.of("jdk", "nio");
+    private static final int PIPELINE_DEPTH = 16;
+    private static final int PIPELINE_ROUNDS = 500;
+
+    public static void main(String[] args) throws Exception {
+        int perClient = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        List<Integer> clientCounts = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            clientCounts.add(Integer.parseInt(args[i]));
+        }
+        if (clientCounts.isEmpty()) {
+            clientCounts = List.of(10, 50, 200);
+        }
+        System.setProperty("http.maxConnections", "1000");
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 1; i <= 8; i++) {
+            json.append(i > 1 ? "," : "").append("{\"id\":").append(i)
+                    .append(",\"name\":\"Denim Jacket\",\"price\":35.00,\"category\":\"men\",\"stock\":100,")
+                    .append("\"imageUrl\":\"asset/jacket.jpg\",\"tags\":[\"denim\",\"preloved\"]}");
+        }
+        byte[] body = json.append("]").toString().getBytes(StandardCharsets.UTF_8);
+
+        System.out.printf("%-6s %8s %10s %10s %10s %10s%n", "engine", "clients", "req/s", "p50 ms", "p99 ms", "max ms");
+        for (int clients : clientCounts) {
+            for (String engine : ENGINES) {
+                HttpServer server = start(engine, body);
+                try {
+                    keepAlive(engine, server, clients, perClient);
+                } finally {
+                    stop(server);
+                }
+            }
+        }
+        System.out.printf("%n%-6s %8s %10s%n", "engine", "depth", "req/s");
+        for (String engine : ENGINES) {
+            HttpServer server = start(engine, body);
+            try {
+                pipelined(engine, server);
+            } finally {
+                stop(server);
+            }
+        }
+    }
+
+    private static HttpServer start(String engine, byte[] body) throws IOException {
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", 0);
+        HttpServer server = "nio".equals(engine) ? NioHttpServer.create(address, 1024) : HttpServer.create(address, 1024);
+        server.createContext("/api/products", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.setExecutor(ServerExecutors.create("fixed", 10));
+        server.start();
+        return server;
+    }
+
+    private static void stop(HttpServer server) {
+        server.stop(0);
+        ((ExecutorService) server.getExecutor()).shutdown();
+    }
+
+    private static void keepAlive(String engine, HttpServer server, int clients, int perClient) throws Exception {
+        URL url = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/api/products").toURL();
+        request(url);
+        long[] latencies = new long[clients * perClient];
+        ExecutorService load = Executors.newFixedThreadPool(clients);
+        CountDownLatch ready = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            int offset = c * perClient;
+            futures.add(load.submit(() -> {
+                ready.await();
+                for (int i = 0; i < perClient; i++) {
+                    long start = System.nanoTime();
+                    request(url);
+                    latencies[offset + i] = System.nanoTime() - start;
+                }
+                return null;
+            }));
+        }
+        long start = System.nanoTime();
+        ready.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        load.shutdown();
+
+        Arrays.sort(latencies);
+        System.out.printf("%-6s %8d %10.0f %10.2f %10.2f %10.2f%n", engine, clients, latencies.length / seconds,
+                percentile(latencies, 0.50), percentile(latencies, 0.99), latencies[latencies.length - 1] / 1e6);
+    }
+
+    private static void pipelined(String engine, HttpServer server) throws IOException {
+        byte[] batch = ("GET /api/products HTTP/1.1\r\nHost: 127.0.0.1\r\n\r\n").repeat(PIPELINE_DEPTH)
+                .getBytes(StandardCharsets.US_ASCII);
+        byte[] marker = "HTTP/1.1 200".getBytes(StandardCharsets.US_ASCII);
+        int responses = 0;
+        long start = System.nanoTime();
+        try (Socket socket = new Socket("127.0.0.1", server.getAddress().getPort())) {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(2000);
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[64 * 1024];
+            for (int round = 0; round < PIPELINE_ROUNDS; round++) {
+                socket.getOutputStream().write(batch);
+                int expected = (round + 1) * PIPELINE_DEPTH;
+                int matched = 0;
+                while (responses < expected) {
+                    int n = in.read(buffer);
+                    if (n < 0) throw new IOException("Connection closed after " + responses + " responses");
+                    // Count status lines, carrying a partial match across reads
+                    for (int i = 0; i < n; i++) {
+                        matched = buffer[i] == marker[matched] ? matched + 1 : (buffer[i] == marker[0] ? 1 : 0);
+                        if (matched == marker.length) {
+                            responses++;
+                            matched = 0;
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.out.printf("%-6s %8d %10s  (%d responses, then: %s)%n", engine, PIPELINE_DEPTH, "-",
+                    responses, e.getMessage());
+            return;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-6s %8d %10.0f%n", engine, PIPELINE_DEPTH, responses / seconds);
+    }
+
+    private static void request(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        if (connection.getResponseCode() != 200) {
+            throw new IOException("HTTP " + connection.getResponseCode());
+        }
+        try (InputStream in = connection.getInputStream()) {
+            in.readAllBytes();
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1e6;
+    }
+}
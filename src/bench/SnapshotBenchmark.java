@@ -0,0 +1,91 @@
+package bench;
+
+import com.google.gson.Gson;
+import model.*;
+import store.StorageEngine;
+import utils.JsonDataManager;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Writes the same order history as a json and a binary snapshot, then
+ * times a cold load of each.
+ *
+ * Usage: java bench.SnapshotBenchmark [orders]
+ */
+public class SnapshotBenchmark {
+    private static final String[] STATUSES = {"PENDING", "PAID", "SHIPPED", "DELIVERED"};
+    private static final String[] STATES = {"Pulau Pinang", "Selangor", "Johor", "Perak", "Sabah"};
+
+    public static void main(String[] args) throws Exception {
+        int orderCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Path scratch = Files.createTempDirectory("snapshot-bench");
+        JsonDataManager memory = JsonDataManager.open("memory", scratch);
+        Gson gson = memory.getGson();
+        memory.close();
+
+        List<Order> orders = generateOrders(orderCount);
+        System.out.printf("%-8s %12s %12s %12s%n", "engine", "write ms", "size MB", "load ms");
+        try {
+            for (String engineName : List.of("json", "binary")) {
+                Path dir = Files.createDirectory(scratch.resolve(engineName));
+                StorageEngine engine = StorageEngine.create(engineName, dir, gson);
+
+                long start = System.nanoTime();
+                engine.checkpoint("orders", orders);
+                long writeMillis = (System.nanoTime() - start) / 1_000_000;
+                engine.close();
+
+                long bytes;
+                try (var files = Files.list(dir)) {
+                    bytes = files.mapToLong(p -> p.toFile().length()).sum();
+                }
+
+                System.gc();
+                StorageEngine reopened = StorageEngine.create(engineName, dir, gson);
+                Map<Integer, Order> loaded = new HashMap<>(orderCount * 2);
+                start = System.nanoTime();
+                reopened.load("orders", Order.class, loaded);
+                long loadMillis = (System.nanoTime() - start) / 1_000_000;
+                reopened.close();
+
+                if (loaded.size() != orderCount) {
+                    throw new IllegalStateException(engineName + " loaded " + loaded.size() + " orders");
+                }
+                System.out.printf("%-8s %12d %12.1f %12d%n", engineName, writeMillis, bytes / 1e6, loadMillis);
+            }
+        } finally {
+            deleteRecursively(scratch);
+        }
+    }
+
+    private static List<Order> generateOrders(int count) {
+        Random random = new Random(42);
+        List<Order> orders = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            Order order = new Order(i, 1 + random.nextInt(50_000));
+            int items = 1 + random.nextInt(3);
+            for (int j = 0; j < items; j++) {
+                int productId = 1 + random.nextInt(500);
+                order.addItem(new CartItem(productId, 1 + random.nextInt(2), 5 + productId % 40,
+                        "Product " + productId, "asset/product-" + productId + ".jpg"));
+            }
+            order.setStatus(STATUSES[random.nextInt(STATUSES.length)]);
+            order.setOrderDate(String.format("2025-%02d-%02dT%02d:%02d:%02d",
+                    1 + random.nextInt(12), 1 + random.nextInt(28),
+                    random.nextInt(24), random.nextInt(60), random.nextInt(60)));
+            order.setShippingAddress(new ShippingAddress("Customer " + order.getUserId(),
+                    "user" + order.getUserId() + "@example.com", "+6012" + order.getUserId(),
+                    "31, Taman High", "Gelugor", STATES[order.getUserId() % STATES.length], "11700"));
+            orders.add(order);
+        }
+        return orders;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (var paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package bench;
+
+import model.*;
+import utils.JsonDataManager;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs the same workload against each storage engine in a scratch directory:
+ * seed the catalog, place orders from several threads, then reopen the store.
+ *
+ * Usage: java bench.StoreBenchmark [products] [orders] [threads] [engines...]
+ */
+public class StoreBenchmark {
+    public static void main(String[] args) throws Exception {
+        int productCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int orderCount = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        List<String> engines = args.length > 3
+                ? Arrays.asList(args).subList(3, args.length)
+                : List.of("json", "binary", "memory");
+
+        System.out.printf("%-8s %12s %12s %12s%n", "engine", "seed ms", "orders/s", "reopen ms");
+        for (String engine : engines) {
+            Path dir = Files.createTempDirectory("store-bench-" + engine);
+            try {
+                run(engine, dir, productCount, orderCount, threads);
+            } finally {
+                deleteRecursively(dir);
+            }
+        }
+    }
+
+    private static void run(String engine, Path dir, int productCount, int orderCount, int threads) throws Exception {
+        JsonDataManager store = JsonDataManager.open(engine, dir);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < productCount; i++) {
+            store.saveProduct(new Product(0, "Product " + i, 10 + i % 90, "Preloved item " + i,
+                    1 + i % 5, i % 2 == 0 ? "men" : "women", "Tops", "asset/" + i + ".jpg",
+                    List.of("tag" + i % 50, "cotton")));
+        }
+        long seedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        start = System.nanoTime();
+        for (int i = 0; i < orderCount; i++) {
+            int n = i;
+            pool.submit(() -> {
+                Order order = new Order(0, 1 + n % 1000);
+                order.setOrderDate("2025-01-14T18:36:03");
+                order.addItem(new CartItem(1 + n % productCount, 1, 19.99, "Product", "asset/p.jpg"));
+                store.saveOrder(order);
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.MINUTES);
+        double ordersPerSecond = orderCount / ((System.nanoTime() - start) / 1e9);
+        store.close();
+
+        start = System.nanoTime();
+        JsonDataManager reopened = JsonDataManager.open(engine, dir);
+        long reopenMillis = (System.nanoTime() - start) / 1_000_000;
+        reopened.close();
+
+        System.out.printf("%-8s %12d %12.0f %12d%n", engine, seedMillis, ordersPerSecond, reopenMillis);
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (var paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -2,11 +2,18 @@ package handler;
 
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
+import search.SearchRequest;
+import search.SearchResult;
 import service.ProductService;
+import store.CatalogSnapshot;
 import service.UserService;
 import service.OrderService;
+import utils.JsonDataManager;
 import utils.Utils;
 import java.io.*;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.Map;
 
 public class AdminHandler implements HttpHandler {
@@ -32,7 +39,29 @@ public class AdminHandler implements HttpHandler {
             if (path.endsWith("/admin/users")) {
                 response = handleUsers(exchange);
             } else if (path.endsWith("/admin/orders/all")) {
-                response = handleOrders(exchange);
+                handleOrders(exchange);
+                return;
+            } else if (path.endsWith("/admin/stats/persistence")) {
+                response = JsonDataManager.getInstance().getPersistenceStatsJson();
+            } else if (path.endsWith("/admin/stats/orders")) {
+                response = JsonDataManager.getInstance().getOrderStatsJson();
+            } else if (path.endsWith("/admin/stats/load")) {
+                response = JsonDataManager.getInstance().getLoadStatsJson();
+            } else if (path.contains("/admin/export/") && "GET".equals(method)) {
+                if (handleExport(exchange, path.substring(path.lastIndexOf('/') + 1))) {
+                    return;
+                }
+                response = "{\"error\": \"Unknown export, expected products, orders or users\"}";
+                responseCode = 404;
+            } else if (path.endsWith("/admin/import/products") && "POST".equals(method)) {
+                response = productService.importProducts(
+                        new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+            } else if (path.endsWith("/admin/snapshot/export") && "POST".equals(method)) {
+                response = handleExportJson();
+            } else if (path.endsWith("/admin/products/batch") && "POST".equals(method)) {
+                Map<String, Object> result = productService.applyBatch(Utils.readRequestBody(exchange));
+                response = productService.toJson(result);
+                responseCode = Boolean.TRUE.equals(result.get("applied")) ? 200 : 422;
             } else if (path.endsWith("/products")) {
                 if ("GET".equals(method)) {
                     response = handleGet(exchange);
@@ -56,9 +85,10 @@ public class AdminHandler implements HttpHandler {
         }
 
         exchange.getResponseHeaders().set("Content-Type", "application/json");
-        exchange.sendResponseHeaders(responseCode, response.getBytes().length);
+        byte[] responseBytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(responseCode, responseBytes.length);
         try (OutputStream os = exchange.getResponseBody()) {
-            os.write(response.getBytes());
+            os.write(responseBytes);
         }
     }
 
@@ -69,17 +99,61 @@ public class AdminHandler implements HttpHandler {
         return response;
     }
 
-    private String handleOrders(HttpExchange exchange) {
+    // The full history is streamed, never held in memory as one string
+    private void handleOrders(HttpExchange exchange) throws IOException {
         System.out.println("Handling admin orders request...");
-        String response = orderService.getAllOrders();
-        System.out.println("Orders response: " + response);
-        return response;
+        Utils.sendStream(exchange, 200, orderService::writeAllOrders);
+    }
+
+    /*
+     * NDJSON export, streamed: /admin/export/{products|orders|users}?since=
+     * where since is an id for products and users and an ISO date prefix for orders.
+     */
+    private boolean handleExport(HttpExchange exchange, String kind) throws IOException {
+        Map<String, String> params = Utils.parseQueryString(exchange.getRequestURI().getQuery());
+        String since = params.containsKey("since") ? URLDecoder.decode(params.get("since"), StandardCharsets.UTF_8) : null;
+        Utils.StreamBody body;
+        switch (kind) {
+            case "products" -> {
+                int sinceId = since == null ? 0 : Integer.parseInt(since);
+                body = out -> productService.exportProducts(sinceId, out);
+            }
+            case "orders" -> body = out -> orderService.exportOrders(since, out);
+            case "users" -> {
+                int sinceId = since == null ? 0 : Integer.parseInt(since);
+                body = out -> userService.exportUsers(sinceId, out);
+            }
+            default -> {
+                return false;
+            }
+        }
+        Utils.sendStream(exchange, 200, "application/x-ndjson", body);
+        return true;
+    }
+
+    private String handleExportJson() throws IOException {
+        JsonDataManager dataManager = JsonDataManager.getInstance();
+        Path directory = dataManager.getDataDir().resolve("export");
+        dataManager.exportJson(directory);
+        return "{\"message\": \"Exported JSON\", \"directory\": \""
+                + directory.toAbsolutePath().toString().replace("\\", "\\\\") + "\"}";
     }
 
     private String handleGet(HttpExchange exchange) {
         // Get products with pagination
         String query = exchange.getRequestURI().getQuery();
         Map<String, String> params = Utils.parseQueryString(query);
+        CatalogSnapshot catalog = productService.getCatalog();
+        exchange.getResponseHeaders().set("X-Catalog-Version", String.valueOf(catalog.getVersion()));
+        // Keyset paging: ?after=<cursor>&limit=, with the next cursor in X-Next-Cursor
+        if (params.containsKey("after") || params.containsKey("limit")) {
+            SearchResult result = productService.search(SearchRequest.fromParams(params));
+            exchange.getResponseHeaders().set("X-Total-Count", String.valueOf(result.getTotal()));
+            if (result.getNextCursor() != null) {
+                exchange.getResponseHeaders().set("X-Next-Cursor", result.getNextCursor());
+            }
+            return productService.toJson(productService.getProducts(catalog, result.getIds()));
+        }
         int page = Integer.parseInt(params.getOrDefault("page", "1"));
         int pageSize = Integer.parseInt(params.getOrDefault("pageSize", "10"));
         return productService.getProductsPage(page, pageSize);
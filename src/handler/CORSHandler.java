@@ -16,8 +16,9 @@ public class CORSHandler implements HttpHandler {
         // Set CORS headers for all responses
         exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "http://localhost:3000");
         exchange.getResponseHeaders().set("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-        exchange.getResponseHeaders().set("Access-Control-Allow-Headers", "Content-Type");
+        exchange.getResponseHeaders().set("Access-Control-Allow-Headers", "Content-Type, If-None-Match");
         exchange.getResponseHeaders().set("Access-Control-Max-Age", "3600");
+        exchange.getResponseHeaders().set("Access-Control-Expose-Headers", "X-Total-Count, X-Next-Cursor, X-Catalog-Version, ETag");
 
         // Handle preflight requests
         if (exchange.getRequestMethod().equalsIgnoreCase("OPTIONS")) {
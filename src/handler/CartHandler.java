@@ -73,6 +73,8 @@ public class CartHandler implements HttpHandler {
                 return "{\"userId\":" + userId + ",\"items\":[],\"total\":0.0}";
             }
 
+            // Version read before serializing, so a racing update can only make the tag stale, never wrong
+            Utils.setETag(exchange, Utils.weakETag("cart" + userId, cart.getVersion()), Utils.PRIVATE_CACHE_CONTROL);
             return cart.toJson();
         } catch (Exception e) {
             System.err.println("Error in handleGet: " + e.getMessage());
@@ -0,0 +1,249 @@
+package handler;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpPrincipal;
+import utils.Config;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses response bodies with gzip or deflate when the client accepts
+ * it. Fixed-length bodies are buffered and compressed once they are
+ * complete, unless they are below the size threshold; streamed (chunked)
+ * bodies are compressed on the fly. Compressed forms of responses that
+ * carry an ETag are kept in a small LRU cache keyed by request and tag, so
+ * a cacheable listing is compressed once per version rather than once per
+ * request.
+ */
+public class CompressionHandler implements HttpHandler {
+    private static final int MIN_BYTES = Config.getInt("http.compressMinBytes", 1024);
+    private static final int LEVEL = Math.max(1, Math.min(9, Config.getInt("http.compressLevel", 6)));
+    private static final int CACHE_ENTRIES = Config.getInt("http.compressCacheEntries", 256);
+
+    // "method URI|ETag|encoding" -> compressed body, least recently used evicted first
+    private static final Map<String, byte[]> cache = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+            return size() > CACHE_ENTRIES;
+        }
+    };
+
+    private final HttpHandler handler;
+
+    public CompressionHandler(HttpHandler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Vary", "Accept-Encoding");
+        String encoding = negotiate(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+        if (encoding == null || "HEAD".equals(exchange.getRequestMethod())) {
+            handler.handle(exchange);
+            return;
+        }
+        CompressingExchange compressing = new CompressingExchange(exchange, encoding);
+        try {
+            handler.handle(compressing);
+        } finally {
+            compressing.finish();
+        }
+    }
+
+    // gzip preferred over deflate; anything listed with q=0 is refused
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        boolean gzip = false;
+        boolean deflate = false;
+        for (String part : acceptEncoding.toLowerCase(Locale.ROOT).split(",")) {
+            String[] tokens = part.trim().split(";");
+            String coding = tokens[0].trim();
+            boolean refused = false;
+            for (int i = 1; i < tokens.length; i++) {
+                String param = tokens[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        refused = Double.parseDouble(param.substring(2)) <= 0;
+                    } catch (NumberFormatException e) {
+                        refused = true;
+                    }
+                }
+            }
+            if (refused) continue;
+            if (coding.equals("gzip") || coding.equals("x-gzip") || coding.equals("*")) {
+                gzip = true;
+            } else if (coding.equals("deflate")) {
+                deflate = true;
+            }
+        }
+        return gzip ? "gzip" : deflate ? "deflate" : null;
+    }
+
+    static byte[] compress(byte[] body, int length, String encoding) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, length / 4));
+        try (OutputStream compressor = compressor(out, encoding)) {
+            compressor.write(body, 0, length);
+        }
+        return out.toByteArray();
+    }
+
+    static OutputStream compressor(OutputStream out, String encoding) throws IOException {
+        if ("gzip".equals(encoding)) {
+            return new GZIPOutputStream(out, 8192) {
+                {
+                    def.setLevel(LEVEL);
+                }
+            };
+        }
+        Deflater deflater = new Deflater(LEVEL);
+        return new DeflaterOutputStream(out, deflater, 8192) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    private static byte[] cached(String key) {
+        synchronized (cache) {
+            return cache.get(key);
+        }
+    }
+
+    private static void remember(String key, byte[] compressed) {
+        synchronized (cache) {
+            cache.put(key, compressed);
+        }
+    }
+
+    // Everything delegates except how the response headers and body are sent
+    private static final class CompressingExchange extends HttpExchange {
+        private final HttpExchange exchange;
+        private final String encoding;
+        private int status = -1;
+        private Buffer buffer;
+        private OutputStream body;
+        private boolean finished;
+
+        CompressingExchange(HttpExchange exchange, String encoding) {
+            this.exchange = exchange;
+            this.encoding = encoding;
+        }
+
+        @Override
+        public void sendResponseHeaders(int code, long length) throws IOException {
+            status = code;
+            boolean alreadyEncoded = exchange.getResponseHeaders().containsKey("Content-Encoding");
+            if (length < 0 || code == 204 || code == 304 || alreadyEncoded
+                    || (length > 0 && length < MIN_BYTES)) {
+                // No body, too small, or not ours to touch
+                exchange.sendResponseHeaders(code, length);
+                body = exchange.getResponseBody();
+            } else if (length == 0) {
+                // Streamed: compress on the fly, the length is unknown anyway
+                exchange.getResponseHeaders().set("Content-Encoding", encoding);
+                exchange.sendResponseHeaders(code, 0);
+                body = compressor(exchange.getResponseBody(), encoding);
+            } else {
+                // Fixed length: hold the body until it is complete
+                buffer = new Buffer((int) Math.min(length, Integer.MAX_VALUE));
+                body = buffer;
+            }
+        }
+
+        @Override
+        public OutputStream getResponseBody() {
+            return body != null ? body : exchange.getResponseBody();
+        }
+
+        @Override
+        public void close() {
+            try {
+                finish();
+            } catch (IOException e) {
+                System.err.println("Failed to send compressed response: " + e.getMessage());
+            }
+        }
+
+        void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            try {
+                if (buffer != null) {
+                    sendBuffered();
+                } else if (body != null) {
+                    body.close();
+                }
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private void sendBuffered() throws IOException {
+            String etag = status == 200 ? exchange.getResponseHeaders().getFirst("ETag") : null;
+            // The cache is shared by every context, so the tag alone is only trusted for its own resource
+            String key = etag != null
+                    ? exchange.getRequestMethod() + " " + exchange.getRequestURI() + "|" + etag + "|" + encoding
+                    : null;
+            byte[] compressed = key != null ? cached(key) : null;
+            if (compressed == null) {
+                compressed = compress(buffer.bytes(), buffer.size(), encoding);
+                if (key != null) {
+                    remember(key, compressed);
+                }
+            }
+            exchange.getResponseHeaders().set("Content-Encoding", encoding);
+            exchange.sendResponseHeaders(status, compressed.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(compressed);
+            }
+        }
+
+        @Override public Headers getRequestHeaders() { return exchange.getRequestHeaders(); }
+        @Override public Headers getResponseHeaders() { return exchange.getResponseHeaders(); }
+        @Override public URI getRequestURI() { return exchange.getRequestURI(); }
+        @Override public String getRequestMethod() { return exchange.getRequestMethod(); }
+        @Override public HttpContext getHttpContext() { return exchange.getHttpContext(); }
+        @Override public InputStream getRequestBody() { return exchange.getRequestBody(); }
+        @Override public int getResponseCode() { return status; }
+        @Override public InetSocketAddress getRemoteAddress() { return exchange.getRemoteAddress(); }
+        @Override public InetSocketAddress getLocalAddress() { return exchange.getLocalAddress(); }
+        @Override public String getProtocol() { return exchange.getProtocol(); }
+        @Override public Object getAttribute(String name) { return exchange.getAttribute(name); }
+        @Override public void setAttribute(String name, Object value) { exchange.setAttribute(name, value); }
+        @Override public void setStreams(InputStream i, OutputStream o) { exchange.setStreams(i, o); }
+        @Override public HttpPrincipal getPrincipal() { return exchange.getPrincipal(); }
+    }
+
+    // Exposes its array so the body is compressed without another copy
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer(int size) {
+            super(size);
+        }
+
+        byte[] bytes() {
+            return buf;
+        }
+    }
+}
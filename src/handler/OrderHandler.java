@@ -10,7 +10,7 @@ import adapter.OrderTypeAdapter;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import java.io.IOException;
-import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 public class OrderHandler implements HttpHandler {
@@ -47,9 +47,18 @@ public class OrderHandler implements HttpHandler {
             if ("GET".equals(exchange.getRequestMethod())) {
                 if (path.startsWith("/api/orders/user/")) {
                     String userId = path.substring("/api/orders/user/".length());
-                    response = handleGetUserOrders(Integer.parseInt(userId));
+                    Map<String, String> params = Utils.parseQueryString(exchange.getRequestURI().getQuery());
+                    int limit = pagingParam(params, "limit");
+                    int cursor = pagingParam(params, "cursor");
+                    if (limit < 0 || cursor < 0) {
+                        responseCode = 400;
+                        response = "{\"error\": \"limit and cursor must be positive integers\"}";
+                    } else {
+                        response = handleGetUserOrders(exchange, Integer.parseInt(userId), cursor, limit);
+                    }
                 } else if (path.endsWith("/admin/orders/all")) {
-                    response = orderService.getAllOrders();
+                    Utils.sendStream(exchange, 200, orderService::writeAllOrders);
+                    return;
                 } else {
                     responseCode = 404;
                     response = "{\"error\": \"Invalid endpoint\"}";
@@ -108,11 +117,21 @@ public class OrderHandler implements HttpHandler {
         }
     }
 
-    private String handleGetUserOrders(int userId) {
+    /*
+     * Newest first. With ?limit=N only one page is returned; when more may
+     * follow, X-Next-Cursor holds the value to pass as ?cursor= next time.
+     */
+    private String handleGetUserOrders(HttpExchange exchange, int userId, int cursor, int limit) {
         try {
             System.out.println("Fetching orders for userId: " + userId);
-            Collection<Order> userOrders = orderService.getUserOrders(userId);
+            List<Order> userOrders = orderService.getUserOrders(userId, cursor, limit);
+            if (limit != Integer.MAX_VALUE && !userOrders.isEmpty() && userOrders.size() == limit) {
+                int nextCursor = userOrders.get(userOrders.size() - 1).getId();
+                exchange.getResponseHeaders().set("X-Next-Cursor", String.valueOf(nextCursor));
+            }
             System.out.println("Found orders: " + userOrders.size());
+            Utils.setETag(exchange, Utils.weakETag("u" + userId, versionHash(exchange, userOrders)),
+                    Utils.PRIVATE_CACHE_CONTROL);
             String jsonResponse = gson.toJson(userOrders);
             System.out.println("Sending response: " + jsonResponse);
             return jsonResponse;
@@ -121,4 +140,28 @@ public class OrderHandler implements HttpHandler {
             throw new RuntimeException("Error fetching user orders: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    // Integer.MAX_VALUE when absent, -1 when not a positive integer
+    private static int pagingParam(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null) {
+            return Integer.MAX_VALUE;
+        }
+        try {
+            int parsed = Integer.parseInt(value);
+            return parsed > 0 ? parsed : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Changes when the page gains, loses or modifies an order, or the paging parameters change
+    private static String versionHash(HttpExchange exchange, List<Order> orders) {
+        StringBuilder state = new StringBuilder(16 * orders.size() + 64);
+        state.append(Utils.queryDigest(Utils.parseQueryString(exchange.getRequestURI().getQuery())));
+        for (Order order : orders) {
+            state.append(',').append(order.getId()).append(':').append(order.getVersion());
+        }
+        return Utils.digest(state.toString());
+    }
+}
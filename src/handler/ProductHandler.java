@@ -4,16 +4,23 @@ import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
 import service.ProductService;
 import model.Product;
+import search.SearchRequest;
+import search.SearchResult;
+import store.CatalogSnapshot;
 import utils.Utils;
 import java.io.*;
-import java.util.stream.Collectors;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Collection;
-import java.util.Iterator;
 
 public class ProductHandler implements HttpHandler {
+    private static final byte[] OPEN = {'['};
+    private static final byte[] COMMA = {','};
+    private static final byte[] CLOSE = {']'};
+
     private final ProductService productService;
 
     public ProductHandler(ProductService productService) {
@@ -22,20 +29,20 @@ public class ProductHandler implements HttpHandler {
 
     @Override
     public void handle(HttpExchange exchange) throws IOException {
-        String response = "";
+        List<byte[]> response;
         int responseCode = 200;
 
         try {
             switch (exchange.getRequestMethod()) {
                 case "GET" -> response = handleGet(exchange);
-                case "POST" -> response = handlePost(exchange);
+                case "POST" -> response = body(handlePost(exchange));
                 default -> {
-                    response = "{\"error\": \"Method not supported\"}";
+                    response = body("{\"error\": \"Method not supported\"}");
                     responseCode = 405;
                 }
             }
         } catch (Exception e) {
-            response = "{\"error\": \"" + e.getMessage() + "\"}";
+            response = body("{\"error\": \"" + e.getMessage() + "\"}");
             responseCode = 500;
             e.printStackTrace();
         }
@@ -43,67 +50,78 @@ public class ProductHandler implements HttpHandler {
         Utils.sendResponse(exchange, response, responseCode);
     }
 
-    private String handleGet(HttpExchange exchange) {
+    // Responses are lists of byte fragments so cached product JSON is written as is
+    private List<byte[]> handleGet(HttpExchange exchange) {
         try {
             String query = exchange.getRequestURI().getQuery();
             Map<String, String> params = Utils.parseQueryString(query);
 
+            // Autocomplete: /api/products/suggest?q=&limit=
+            if (exchange.getRequestURI().getPath().endsWith("/suggest")) {
+                String prefix = URLDecoder.decode(params.getOrDefault("q", ""), StandardCharsets.UTF_8);
+                int limit = Math.min(50, Integer.parseInt(params.getOrDefault("limit", "10")));
+                return body(productService.suggest(prefix, limit));
+            }
+
+            // Everything below reads one catalog version
+            CatalogSnapshot catalog = productService.getCatalog();
+            exchange.getResponseHeaders().set("X-Catalog-Version", String.valueOf(catalog.getVersion()));
+
             // Handle specific product request
             if (params.containsKey("id")) {
                 int id = Integer.parseInt(params.get("id"));
-                Product product = productService.getProduct(id);
+                Product product = catalog.get(id);
                 if (product == null) {
-                    return "{\"error\": \"Product not found\"}";
+                    return body("{\"error\": \"Product not found\"}");
                 }
-                return product.toJson();
+                Utils.setETag(exchange, Utils.weakETag("p" + id, product.getVersion()), Utils.CATALOG_CACHE_CONTROL);
+                return List.of(product.toJsonBytes());
             }
 
-            // Handle filtered products request
-            Collection<Product> products = productService.getAllProducts();
-
-            // Apply category filter if present
-            if (params.containsKey("category")) {
-                String category = params.get("category");
-                products = products.stream()
-                        .filter(p -> p.getCategory().equalsIgnoreCase(category))
-                        .collect(Collectors.toList());
+            // A listing is fully determined by the catalog version and the query
+            String etag = Utils.weakETag("c" + catalog.getVersion(), Utils.queryDigest(params));
+            if (Utils.matchesETag(exchange, etag)) {
+                Utils.setETag(exchange, etag, Utils.CATALOG_CACHE_CONTROL);
+                return List.of();
             }
 
-            // Apply keyword search if present
-            if (params.containsKey("keywords")) {
-                String keyword = params.get("keywords").toLowerCase();
-                products = products.stream()
-                        .filter(p -> matchesSearch(p, keyword))
-                        .collect(Collectors.toList());
+            // Keyword search, facet and price filters, sort (relevance|price|price_desc|newest)
+            // and paging by page/limit or by after=<cursor>&limit=
+            SearchResult result = productService.search(SearchRequest.fromParams(params));
+            exchange.getResponseHeaders().set("X-Total-Count", String.valueOf(result.getTotal()));
+            if (result.getNextCursor() != null) {
+                exchange.getResponseHeaders().set("X-Next-Cursor", result.getNextCursor());
             }
+            Collection<Product> products = productService.getProducts(catalog, result.getIds());
 
-            // Apply pagination if present
-            if (params.containsKey("page") && params.containsKey("limit")) {
-                int page = Integer.parseInt(params.get("page"));
-                int limit = Integer.parseInt(params.get("limit"));
-                int skip = (page - 1) * limit;
+            Utils.setETag(exchange, etag, Utils.CATALOG_CACHE_CONTROL);
 
-                products = products.stream()
-                        .skip(skip)
-                        .limit(limit)
-                        .collect(Collectors.toList());
+            // JSON array of the cached fragments
+            List<byte[]> fragments = new ArrayList<>(products.size() * 2 + 3);
+            boolean facets = result.getFacets() != null;
+            if (facets) {
+                fragments.add("{\"products\":".getBytes(StandardCharsets.UTF_8));
             }
-
-            // Convert to JSON array
-            StringBuilder jsonArray = new StringBuilder("[");
-            Iterator<Product> iterator = products.iterator();
-            while (iterator.hasNext()) {
-                jsonArray.append(iterator.next().toJson());
-                if (iterator.hasNext()) {
-                    jsonArray.append(",");
+            fragments.add(OPEN);
+            for (Product product : products) {
+                if (fragments.size() > (facets ? 2 : 1)) {
+                    fragments.add(COMMA);
                 }
+                fragments.add(product.toJsonBytes());
             }
-            jsonArray.append("]");
-
-            return jsonArray.toString();
+            fragments.add(CLOSE);
+
+            // facets=true wraps the page with the total and per-facet counts
+            if (facets) {
+                fragments.add((",\"total\":" + result.getTotal()
+                        + ",\"nextCursor\":" + productService.toJson(result.getNextCursor())
+                        + ",\"facets\":" + productService.toJson(result.getFacets()) + "}")
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+            return fragments;
         } catch (Exception e) {
             e.printStackTrace();
-            return "{\"error\": \"" + e.getMessage() + "\"}";
+            return body("{\"error\": \"" + e.getMessage() + "\"}");
         }
     }
 
@@ -133,6 +151,10 @@ public class ProductHandler implements HttpHandler {
         return "{\"message\": \"Product added successfully\", \"productId\": " + product.getId() + "}";
     }
 
+    private static List<byte[]> body(String json) {
+        return List.of(json.getBytes(StandardCharsets.UTF_8));
+    }
+
     private void sendResponse(HttpExchange exchange, String response, int code) throws IOException {
         exchange.getResponseHeaders().set("Content-Type", "application/json");
         byte[] responseBytes = response.getBytes();
@@ -141,12 +163,4 @@ public class ProductHandler implements HttpHandler {
             os.write(responseBytes);
         }
     }
-
-    private boolean matchesSearch(Product product, String searchTerm) {
-        // Check if search term matches name, description, or any keyword
-        return product.getName().toLowerCase().contains(searchTerm) ||
-                product.getDescription().toLowerCase().contains(searchTerm) ||
-                product.getKeywords().stream()
-                        .anyMatch(keyword -> keyword.toLowerCase().contains(searchTerm));
-    }
 }
@@ -7,6 +7,7 @@ import model.User;
 import utils.JsonDataManager;
 import utils.Utils;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 public class UserHandler implements HttpHandler {
@@ -51,9 +52,10 @@ public class UserHandler implements HttpHandler {
         }
 
         exchange.getResponseHeaders().set("Content-Type", "application/json");
-        exchange.sendResponseHeaders(responseCode, response.getBytes().length);
+        byte[] responseBytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(responseCode, responseBytes.length);
         try (OutputStream os = exchange.getResponseBody()) {
-            os.write(response.getBytes());
+            os.write(responseBytes);
         }
     }
 
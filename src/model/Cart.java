@@ -3,7 +3,7 @@ package model;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
-public class Cart {
+public class Cart extends VersionedEntity {
     private final int userId;
     private final Map<Integer, CartItem> items;
     private volatile double total;
@@ -36,15 +36,18 @@ public class Cart {
             }
         }
         calculateTotal();
+        touch();
     }
 
     public void setTotal(double total) {
         this.total = total;
+        touch();
     }
 
     public synchronized void addItem(CartItem item) {
         items.put(item.getProductId(), item);
         calculateTotal();
+        touch();
     }
 
     private synchronized void calculateTotal() {
@@ -69,8 +72,10 @@ public class Cart {
     }
 
     public synchronized void removeItem(int productId) {
-        items.remove(productId);
-        calculateTotal();
+        if (items.remove(productId) != null) {
+            calculateTotal();
+            touch();
+        }
     }
 
     public synchronized void updateItemQuantity(int productId, int quantity) {
@@ -78,12 +83,16 @@ public class Cart {
         if (item != null) {
             item.setQuantity(quantity);
             calculateTotal();
+            touch();
         }
     }
 
     public synchronized void clearItems() {
-        items.clear();
-        total = 0.0;
+        if (!items.isEmpty() || total != 0.0) {
+            items.clear();
+            total = 0.0;
+            touch();
+        }
     }
 }
 
@@ -3,7 +3,7 @@ package model;
 import java.util.ArrayList;
 import java.util.List;
 
-public class Order {
+public class Order extends VersionedEntity {
     private int id;
     private int userId;
     private List<CartItem> items;
@@ -30,15 +30,16 @@ public class Order {
     public ShippingAddress getShippingAddress() { return shippingAddress; }
 
     // Setters
-    public void setId(int id) { this.id = id; }
-    public void setTotal(double total) { this.total = total; }
-    public void setStatus(String status) { this.status = status; }
-    public void setOrderDate(String orderDate) { this.orderDate = orderDate; }
-    public void setShippingAddress(ShippingAddress address) { this.shippingAddress = address; }
+    public void setId(int id) { this.id = id; touch(); }
+    public void setTotal(double total) { this.total = total; touch(); }
+    public void setStatus(String status) { this.status = status; touch(); }
+    public void setOrderDate(String orderDate) { this.orderDate = orderDate; touch(); }
+    public void setShippingAddress(ShippingAddress address) { this.shippingAddress = address; touch(); }
 
     public void addItem(CartItem item) {
         items.add(item);
         calculateTotal();
+        touch();
     }
 
     private void calculateTotal() {
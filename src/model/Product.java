@@ -1,10 +1,19 @@
 package model;
 
+import utils.Config;
+import utils.Utils;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.stream.Collectors;
 import java.util.ArrayList;
 
-public class Product {
+public class Product extends VersionedEntity {
+    /**
+     * Largest id a stored product may have. Ids index arrays in the catalog
+     * snapshot and the search index, so they are kept positive and bounded
+     * (catalog.maxProductId, default 1,000,000); 0 means "assign one".
+     */
+    public static final int MAX_ID = Config.getInt("catalog.maxProductId", 1_000_000);
+
     private int id;
     private String name;
     private double price;
@@ -14,6 +23,7 @@ public class Product {
     private String subcategory;
     private String imageUrl;
     private List<String> keywords; // Add keywords field
+    private transient volatile Wire wire;
 
     public Product(int id, String name, double price, String description,
                    int stockQuantity, String category, String subcategory,
@@ -29,6 +39,17 @@ public class Product {
         this.keywords = keywords != null ? keywords : new ArrayList<>();
     }
 
+    public static boolean isValidId(int id) {
+        return id >= 1 && id <= MAX_ID;
+    }
+
+    public static int requireValidId(int id) {
+        if (!isValidId(id)) {
+            throw new IllegalArgumentException("Product id must be between 1 and " + MAX_ID + ", got " + id);
+        }
+        return id;
+    }
+
     // Getters
     public int getId() { return id; }
     public String getName() { return name; }
@@ -38,34 +59,83 @@ public class Product {
     public String getCategory() { return category; }
     public String getSubcategory() { return subcategory; }
     public String getImageUrl() { return imageUrl; }
-    public void setImageUrl(String imageUrl) { this.imageUrl = imageUrl; }
+    public void setImageUrl(String imageUrl) { this.imageUrl = imageUrl; touch(); }
 
     // Setters
-    public void setId(int id) { this.id = id; }
-    public void setName(String name) { this.name = name; }
-    public void setPrice(double price) { this.price = price; }
-    public void setDescription(String description) { this.description = description; }
-    public void setStockQuantity(int stockQuantity) { this.stockQuantity = stockQuantity; }
-    public void setCategory(String category) { this.category = category; }
-    public void setSubcategory(String subcategory) { this.subcategory = subcategory; }
+    public void setId(int id) { this.id = id; touch(); }
+    public void setName(String name) { this.name = name; touch(); }
+    public void setPrice(double price) { this.price = price; touch(); }
+    public void setDescription(String description) { this.description = description; touch(); }
+    public void setStockQuantity(int stockQuantity) { this.stockQuantity = stockQuantity; touch(); }
+    public void setCategory(String category) { this.category = category; touch(); }
+    public void setSubcategory(String subcategory) { this.subcategory = subcategory; touch(); }
     public List<String> getKeywords() {
         return keywords;
     }
 
+    /** Wire form of this product as UTF-8 JSON, rebuilt only after a change. */
+    public byte[] toJsonBytes() {
+        long current = getVersion();
+        Wire cached = wire;
+        if (cached == null || cached.version != current) {
+            cached = new Wire(current, buildJson().getBytes(StandardCharsets.UTF_8));
+            wire = cached;
+        }
+        return cached.bytes;
+    }
+
     public String toJson() {
-        // Convert keywords list to JSON array string
-        String keywordsJson = keywords.stream()
-                .map(k -> "\"" + k + "\"")
-                .collect(Collectors.joining(",", "[", "]"));
-
-        return String.format(
-                "{\"id\":%d,\"name\":\"%s\",\"price\":%.2f," +
-                        "\"description\":\"%s\",\"stockQuantity\":%d," +
-                        "\"category\":\"%s\",\"subcategory\":\"%s\"," +
-                        "\"imageUrl\":\"%s\",\"keywords\":%s}",
-                id, name, price, description, stockQuantity,
-                category, subcategory, imageUrl, keywordsJson
-        );
+        return new String(toJsonBytes(), StandardCharsets.UTF_8);
+    }
+
+    private String buildJson() {
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"id\":").append(id);
+        json.append(",\"name\":");
+        Utils.appendJsonString(json, name);
+        json.append(",\"price\":");
+        appendPrice(json, price);
+        json.append(",\"description\":");
+        Utils.appendJsonString(json, description);
+        json.append(",\"stockQuantity\":").append(stockQuantity);
+        json.append(",\"category\":");
+        Utils.appendJsonString(json, category);
+        json.append(",\"subcategory\":");
+        Utils.appendJsonString(json, subcategory);
+        json.append(",\"imageUrl\":");
+        Utils.appendJsonString(json, imageUrl);
+        json.append(",\"keywords\":[");
+        if (keywords != null) {
+            for (int i = 0; i < keywords.size(); i++) {
+                if (i > 0) json.append(',');
+                Utils.appendJsonString(json, keywords.get(i));
+            }
+        }
+        return json.append("]}").toString();
+    }
+
+    // Same two decimals as "%.2f", without the formatter or its locale
+    private static void appendPrice(StringBuilder json, double price) {
+        long cents = Math.round(price * 100);
+        if (cents < 0) {
+            json.append('-');
+            cents = -cents;
+        }
+        long fraction = cents % 100;
+        json.append(cents / 100).append('.');
+        if (fraction < 10) json.append('0');
+        json.append(fraction);
+    }
+
+    // Serialized bytes together with the version they were built from
+    private static final class Wire {
+        final long version;
+        final byte[] bytes;
+
+        Wire(long version, byte[] bytes) {
+            this.version = version;
+            this.bytes = bytes;
+        }
     }
 
     @Override
@@ -20,6 +20,15 @@ public class ShippingAddress {
         this.postalCode = postalCode;
     }
 
+    // Getters
+    public String getFullName() { return fullName; }
+    public String getEmail() { return email; }
+    public String getPhone() { return phone; }
+    public String getAddress() { return address; }
+    public String getCity() { return city; }
+    public String getState() { return state; }
+    public String getPostalCode() { return postalCode; }
+
     public String toJson() {
         return String.format(
                 "{\"fullName\":\"%s\",\"email\":\"%s\",\"phone\":\"%s\"," +
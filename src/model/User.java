@@ -1,6 +1,6 @@
 package model;
 
-public class User {
+public class User extends VersionedEntity {
     private int id;
     private String email;
     private String password;
@@ -14,13 +14,13 @@ public class User {
     }
 
     public int getId() { return id; }
-    public void setId(int id) { this.id = id; }
+    public void setId(int id) { this.id = id; touch(); }
     public String getEmail() { return email; }
-    public void setEmail(String email) { this.email = email; }
+    public void setEmail(String email) { this.email = email; touch(); }
     public String getPassword() { return password; }
-    public void setPassword(String password) { this.password = password; }
+    public void setPassword(String password) { this.password = password; touch(); }
     public String getRole() { return role; }
-    public void setRole(String role) { this.role = role; }
+    public void setRole(String role) { this.role = role; touch(); }
 
     public String toJson() {
         return String.format(
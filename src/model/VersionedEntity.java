@@ -0,0 +1,45 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Change counter shared by the persisted models. Every mutator moves
+ * {@code version} on after changing state; the persistence layer records
+ * the version it last wrote, so saving an unchanged entity writes nothing.
+ * Versions come from one process-wide sequence, so two instances (or two
+ * states of one instance) never share a version within a run, which lets
+ * the version double as an HTTP validator. All of its fields are transient
+ * and never appear in JSON.
+ */
+public abstract class VersionedEntity {
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    // Gson may allocate without running initializers, so nothing here relies on them
+    private transient volatile long version;
+    private transient volatile long savedVersion;
+    private transient volatile boolean saved;
+
+    // Instances built by Gson skip this; they are loaded once and keep version 0
+    protected VersionedEntity() {
+        touch();
+    }
+
+    protected final void touch() {
+        version = SEQUENCE.incrementAndGet();
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // Never-saved entities are always dirty
+    public boolean isDirty() {
+        return !saved || version != savedVersion;
+    }
+
+    // Called once the given version is durable, or after loading from storage
+    public void markSaved(long savedVersion) {
+        this.savedVersion = savedVersion;
+        this.saved = true;
+    }
+}
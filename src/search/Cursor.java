@@ -0,0 +1,41 @@
+package search;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position after the last item of a page, for keyset pagination: the sort
+ * it belongs to, that item's sort key and its id. Encoded as an opaque
+ * URL-safe token so clients only pass it back.
+ */
+public final class Cursor {
+    private final SearchRequest.Sort sort;
+    // Price in cents, the raw bits of a relevance score, or unused for id orders
+    private final long key;
+    private final int id;
+
+    public Cursor(SearchRequest.Sort sort, long key, int id) {
+        this.sort = sort;
+        this.key = key;
+        this.id = id;
+    }
+
+    public SearchRequest.Sort getSort() { return sort; }
+    public long getKey() { return key; }
+    public int getId() { return id; }
+
+    public String encode() {
+        String raw = sort.name() + ":" + key + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Cursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":");
+            return new Cursor(SearchRequest.Sort.valueOf(parts[0]), Long.parseLong(parts[1]), Integer.parseInt(parts[2]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + token);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package search;
+
+import model.Product;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * One BitSet per category, subcategory and price bucket, indexed by
+ * product id. Ids are handed out sequentially and capped at
+ * Product.MAX_ID, so they already are dense ordinals and no separate
+ * mapping is kept. Filters are BitSet
+ * intersections and facet counts are cardinalities of intersections with
+ * the current match set.
+ */
+public class FacetIndex {
+    // Upper bounds of the price buckets; the last bucket is open-ended
+    private static final double[] PRICE_BOUNDS = {10, 25, 50, 100};
+    private static final String[] PRICE_LABELS = {"0-10", "10-25", "25-50", "50-100", "100+"};
+
+    // Lower-cased value -> members, and the spelling first seen for display
+    private final Map<String, BitSet> categories = new HashMap<>();
+    private final Map<String, BitSet> subcategories = new HashMap<>();
+    private final Map<String, String> displayNames = new HashMap<>();
+    private final BitSet[] priceBuckets = new BitSet[PRICE_LABELS.length];
+
+    // What each id is currently filed under, so updates can clear the old bits
+    private String[] categoryOf = new String[1024];
+    private String[] subcategoryOf = new String[1024];
+    private byte[] bucketOf = new byte[1024];
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public FacetIndex() {
+        for (int i = 0; i < priceBuckets.length; i++) {
+            priceBuckets[i] = new BitSet();
+        }
+    }
+
+    public void index(int id, String category, String subcategory, double price) {
+        Product.requireValidId(id);
+        lock.writeLock().lock();
+        try {
+            retract(id);
+            ensureCapacity(id);
+            categoryOf[id] = file(categories, category, id);
+            subcategoryOf[id] = file(subcategories, subcategory, id);
+            bucketOf[id] = (byte) bucket(price);
+            priceBuckets[bucketOf[id]].set(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            retract(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ids in every requested facet, or null when no facet filter is given.
+     * Values match case-insensitively; {@code priceLabel} is one of the
+     * bucket labels returned by {@link #counts}.
+     */
+    public BitSet filter(String category, String subcategory, String priceLabel) {
+        if (category == null && subcategory == null && priceLabel == null) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            BitSet result = null;
+            if (category != null) {
+                result = and(result, categories.get(key(category)));
+            }
+            if (subcategory != null) {
+                result = and(result, subcategories.get(key(subcategory)));
+            }
+            if (priceLabel != null) {
+                int bucket = Arrays.asList(PRICE_LABELS).indexOf(priceLabel);
+                if (bucket < 0) {
+                    throw new IllegalArgumentException("Unknown price range: " + priceLabel);
+                }
+                result = and(result, priceBuckets[bucket]);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Per-facet counts over {@code matches}, keyed "category", "subcategory" and "price". */
+    public Map<String, Map<String, Integer>> counts(BitSet matches) {
+        Map<String, Map<String, Integer>> result = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            result.put("category", count(categories, matches));
+            result.put("subcategory", count(subcategories, matches));
+            Map<String, Integer> prices = new LinkedHashMap<>();
+            for (int i = 0; i < priceBuckets.length; i++) {
+                int n = intersectionSize(priceBuckets[i], matches);
+                if (n > 0) {
+                    prices.put(PRICE_LABELS[i], n);
+                }
+            }
+            result.put("price", prices);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Callers hold the lock for everything below
+
+    private Map<String, Integer> count(Map<String, BitSet> facet, BitSet matches) {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (Map.Entry<String, BitSet> entry : facet.entrySet()) {
+            int n = intersectionSize(entry.getValue(), matches);
+            if (n > 0) {
+                counts.put(displayNames.get(entry.getKey()), n);
+            }
+        }
+        return counts;
+    }
+
+    private static int intersectionSize(BitSet a, BitSet b) {
+        BitSet copy = (BitSet) a.clone();
+        copy.and(b);
+        return copy.cardinality();
+    }
+
+    private static BitSet and(BitSet result, BitSet bits) {
+        if (bits == null) {
+            return new BitSet();
+        }
+        if (result == null) {
+            return (BitSet) bits.clone();
+        }
+        result.and(bits);
+        return result;
+    }
+
+    private String file(Map<String, BitSet> facet, String value, int id) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        String key = key(value);
+        displayNames.putIfAbsent(key, value.trim());
+        facet.computeIfAbsent(key, k -> new BitSet()).set(id);
+        return key;
+    }
+
+    private void retract(int id) {
+        if (id < 0 || id >= categoryOf.length) {
+            return;
+        }
+        clear(categories, categoryOf[id], id);
+        clear(subcategories, subcategoryOf[id], id);
+        priceBuckets[bucketOf[id]].clear(id);
+        categoryOf[id] = null;
+        subcategoryOf[id] = null;
+    }
+
+    private static void clear(Map<String, BitSet> facet, String key, int id) {
+        if (key == null) return;
+        BitSet bits = facet.get(key);
+        bits.clear(id);
+        if (bits.isEmpty()) {
+            facet.remove(key);
+        }
+    }
+
+    private void ensureCapacity(int id) {
+        if (id >= categoryOf.length) {
+            int size = Math.max(id + 1, categoryOf.length * 2);
+            categoryOf = Arrays.copyOf(categoryOf, size);
+            subcategoryOf = Arrays.copyOf(subcategoryOf, size);
+            bucketOf = Arrays.copyOf(bucketOf, size);
+        }
+    }
+
+    private static int bucket(double price) {
+        for (int i = 0; i < PRICE_BOUNDS.length; i++) {
+            if (price < PRICE_BOUNDS[i]) {
+                return i;
+            }
+        }
+        return PRICE_BOUNDS.length;
+    }
+
+    private static String key(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,273 @@
+package search;
+
+import model.Product;
+import store.IntList;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Term -> sorted product ids. The vocabulary is a sorted map so a query
+ * term also matches every indexed term it is a prefix of ("hood" finds
+ * "hoodie"), which keeps the behaviour of the old substring search for
+ * partially typed words.
+ *
+ * Documents have up to four fields. Each posting carries the term's
+ * frequency in every field packed into one int (8 bits per field), and
+ * per-document field lengths are kept in an array indexed by id (bounded
+ * by Product.MAX_ID), so BM25F scores are computed from the index alone.
+ */
+public class InvertedIndex {
+    public static final int MAX_FIELDS = 4;
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    // Parallel sorted ids and packed field frequencies
+    private static final class Postings {
+        final IntList ids = new IntList();
+        final IntList freqs = new IntList();
+
+        void put(int id, int freq) {
+            int at = ids.lowerBound(id);
+            ids.insert(at, id);
+            freqs.insert(at, freq);
+        }
+
+        boolean remove(int id) {
+            int at = ids.lowerBound(id);
+            if (at == ids.size() || ids.get(at) != id) {
+                return false;
+            }
+            ids.removeAt(at);
+            freqs.removeAt(at);
+            return true;
+        }
+
+        int freq(int id) {
+            int at = ids.lowerBound(id);
+            return at < ids.size() && ids.get(at) == id ? freqs.get(at) : 0;
+        }
+    }
+
+    private final float[] boosts;
+    private final TreeMap<String, Postings> postings = new TreeMap<>();
+    // Distinct terms per product, so an update can retract the old ones
+    private final Map<Integer, String[]> docTerms = new HashMap<>();
+    // id -> field lengths, 16 bits per field
+    private long[] lengths = new long[1024];
+    private final long[] totalLengths = new long[MAX_FIELDS];
+    private int docCount;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** @param boosts weight of each field in the relevance score, in field order */
+    public InvertedIndex(float... boosts) {
+        if (boosts.length > MAX_FIELDS) {
+            throw new IllegalArgumentException("At most " + MAX_FIELDS + " fields");
+        }
+        this.boosts = boosts.clone();
+    }
+
+    /** Replaces whatever was indexed for {@code id}; {@code fields} holds each field's terms. */
+    public void index(int id, List<List<String>> fields) {
+        Product.requireValidId(id);
+        Map<String, Integer> freqs = new LinkedHashMap<>();
+        long packedLengths = 0;
+        for (int f = 0; f < fields.size(); f++) {
+            int shift = f * 8;
+            for (String term : fields.get(f)) {
+                freqs.merge(term, 1 << shift, (a, b) -> ((a >>> shift) & 0xFF) == 0xFF ? a : a + b);
+            }
+            packedLengths |= (long) Math.min(fields.get(f).size(), 0xFFFF) << (f * 16);
+        }
+
+        lock.writeLock().lock();
+        try {
+            retract(id);
+            for (Map.Entry<String, Integer> entry : freqs.entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), t -> new Postings()).put(id, entry.getValue());
+            }
+            docTerms.put(id, freqs.keySet().toArray(new String[0]));
+            if (id >= lengths.length) {
+                lengths = Arrays.copyOf(lengths, Math.max(id + 1, lengths.length * 2));
+            }
+            lengths[id] = packedLengths;
+            for (int f = 0; f < MAX_FIELDS; f++) {
+                totalLengths[f] += fieldLength(packedLengths, f);
+            }
+            docCount++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            retract(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ids of products matching the query, ascending. Each group holds the
+     * alternatives for one query word (the word itself, or its spelling
+     * corrections); a group matches if any alternative does.
+     *
+     * @param all true for AND (every group must match), false for OR
+     */
+    public int[] query(List<List<String>> groups, boolean all) {
+        if (groups.isEmpty()) {
+            return new int[0];
+        }
+        lock.readLock().lock();
+        try {
+            List<int[]> lists = new ArrayList<>(groups.size());
+            for (List<String> group : groups) {
+                int[] ids = new int[0];
+                for (String term : group) {
+                    ids = union(ids, match(term));
+                }
+                if (all && ids.length == 0) {
+                    return ids;
+                }
+                lists.add(ids);
+            }
+            if (all) {
+                // Smallest first keeps every intermediate result small
+                lists.sort(Comparator.comparingInt(a -> a.length));
+                int[] result = lists.get(0);
+                for (int i = 1; i < lists.size() && result.length > 0; i++) {
+                    result = intersect(result, lists.get(i));
+                }
+                return result;
+            }
+            int[] result = new int[0];
+            for (int[] ids : lists) {
+                result = union(result, ids);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** True if some indexed term starts with {@code term}. */
+    public boolean hasPrefix(String term) {
+        lock.readLock().lock();
+        try {
+            String next = postings.ceilingKey(term);
+            return next != null && next.startsWith(term);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * BM25F score of each of {@code ids} (ascending) for the query terms.
+     * A term that prefixes several indexed terms contributes each of them.
+     */
+    public float[] score(List<String> terms, int[] ids) {
+        float[] scores = new float[ids.length];
+        lock.readLock().lock();
+        try {
+            float[] avgLengths = new float[MAX_FIELDS];
+            for (int f = 0; f < MAX_FIELDS; f++) {
+                avgLengths[f] = docCount == 0 ? 1 : Math.max(1f, (float) totalLengths[f] / docCount);
+            }
+            for (String term : new LinkedHashSet<>(terms)) {
+                for (Postings p : expand(term)) {
+                    int df = p.ids.size();
+                    double idf = Math.log(1 + (docCount - df + 0.5) / (df + 0.5));
+                    for (int i = 0; i < ids.length; i++) {
+                        int freq = p.freq(ids[i]);
+                        if (freq == 0) continue;
+                        float tf = 0;
+                        for (int f = 0; f < boosts.length; f++) {
+                            int fieldFreq = (freq >>> (f * 8)) & 0xFF;
+                            if (fieldFreq == 0) continue;
+                            float norm = 1 - B + B * fieldLength(lengths[ids[i]], f) / avgLengths[f];
+                            tf += boosts[f] * fieldFreq / norm;
+                        }
+                        scores[i] += (float) (idf * tf / (K1 + tf));
+                    }
+                }
+            }
+            return scores;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Callers hold the lock for everything below
+
+    private Collection<Postings> expand(String term) {
+        return postings.subMap(term, true, term + Character.MAX_VALUE, false).values();
+    }
+
+    private int[] match(String term) {
+        int[] result = new int[0];
+        for (Postings p : expand(term)) {
+            result = union(result, p.ids.toArray());
+        }
+        return result;
+    }
+
+    private void retract(int id) {
+        String[] previous = docTerms.remove(id);
+        if (previous == null) {
+            return;
+        }
+        for (String term : previous) {
+            Postings p = postings.get(term);
+            if (p != null && p.remove(id) && p.ids.size() == 0) {
+                postings.remove(term);
+            }
+        }
+        for (int f = 0; f < MAX_FIELDS; f++) {
+            totalLengths[f] -= fieldLength(lengths[id], f);
+        }
+        lengths[id] = 0;
+        docCount--;
+    }
+
+    private static int fieldLength(long packed, int field) {
+        return (int) ((packed >>> (field * 16)) & 0xFFFF);
+    }
+
+    static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    static int[] union(int[] a, int[] b) {
+        if (a.length == 0) return b;
+        if (b.length == 0) return a;
+        int[] out = new int[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length || j < b.length) {
+            if (j >= b.length || (i < a.length && a[i] < b[j])) {
+                out[n++] = a[i++];
+            } else if (i >= a.length || b[j] < a[i]) {
+                out[n++] = b[j++];
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+}
@@ -0,0 +1,167 @@
+package search;
+
+import model.Product;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Products ordered by (price, id) in one sorted long[]: price in cents in
+ * the high 32 bits, id in the low 32. A price range is a contiguous slice
+ * found by binary search, so range filters and price ordering cost
+ * O(log n + k). Updates shift the array tail, which is a single memmove.
+ */
+public class PriceIndex {
+    private long[] keys = new long[1024];
+    private int size;
+    // id -> price in cents, -1 when not indexed; ids are bounded by Product.MAX_ID
+    private int[] centsOf = new int[0];
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public static int toCents(double price) {
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, Math.round(price * 100)));
+    }
+
+    public void index(int id, double price) {
+        Product.requireValidId(id);
+        int cents = toCents(price);
+        lock.writeLock().lock();
+        try {
+            retract(id);
+            if (id >= centsOf.length) {
+                int old = centsOf.length;
+                centsOf = Arrays.copyOf(centsOf, Math.max(id + 1, Math.max(1024, old * 2)));
+                Arrays.fill(centsOf, old, centsOf.length, -1);
+            }
+            long key = key(cents, id);
+            int at = lowerBound(key);
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            System.arraycopy(keys, at, keys, at + 1, size - at);
+            keys[at] = key;
+            size++;
+            centsOf[id] = cents;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            retract(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Prices in cents for each id, -1 where unknown; one lock round trip for the lot. */
+    public int[] cents(int[] ids) {
+        int[] result = new int[ids.length];
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                int id = ids[i];
+                result[i] = id >= 0 && id < centsOf.length ? centsOf[id] : -1;
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Number of products priced within [minCents, maxCents]. */
+    public int count(int minCents, int maxCents) {
+        lock.readLock().lock();
+        try {
+            return Math.max(0, upper(maxCents) - lower(minCents));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ids priced within [minCents, maxCents] in price order, skipping the
+     * first {@code offset} and returning at most {@code limit}.
+     */
+    public int[] range(int minCents, int maxCents, boolean descending, int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            int from = lower(minCents);
+            int to = upper(maxCents);
+            int n = (int) Math.max(0, Math.min((long) limit, (long) to - from - offset));
+            int[] ids = new int[n];
+            for (int i = 0; i < n; i++) {
+                int at = descending ? to - 1 - offset - i : from + offset + i;
+                ids[i] = (int) keys[at];
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Up to {@code limit} ids priced within [minCents, maxCents] that come
+     * strictly after {@code afterKey} (see {@link #key}) in the given order.
+     */
+    public int[] rangeAfter(int minCents, int maxCents, boolean descending, long afterKey, int limit) {
+        lock.readLock().lock();
+        try {
+            int from = lower(minCents);
+            int to = upper(maxCents);
+            if (descending) {
+                to = Math.min(to, lowerBound(afterKey));
+            } else {
+                from = Math.max(from, lowerBound(afterKey + 1));
+            }
+            int n = (int) Math.max(0, Math.min((long) limit, (long) to - from));
+            int[] ids = new int[n];
+            for (int i = 0; i < n; i++) {
+                ids[i] = (int) keys[descending ? to - 1 - i : from + i];
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Sort key of a product: (price, id) packed into one long. */
+    public static long key(int cents, int id) {
+        return ((long) cents << 32) | (id & 0xFFFFFFFFL);
+    }
+
+    // Callers hold the lock for everything below
+
+    private void retract(int id) {
+        if (id < 0 || id >= centsOf.length || centsOf[id] < 0) {
+            return;
+        }
+        int at = lowerBound(key(centsOf[id], id));
+        System.arraycopy(keys, at + 1, keys, at, size - at - 1);
+        size--;
+        centsOf[id] = -1;
+    }
+
+    private int lower(int minCents) {
+        return lowerBound(key(Math.max(0, minCents), 0));
+    }
+
+    private int upper(int maxCents) {
+        return maxCents == Integer.MAX_VALUE ? size : lowerBound(key(maxCents + 1, 0));
+    }
+
+    private int lowerBound(long key) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
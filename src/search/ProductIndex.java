@@ -0,0 +1,428 @@
+package search;
+
+import model.Product;
+import store.IntList;
+import utils.Config;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntFunction;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Search structures over the product catalog, kept in step with the
+ * product map by JsonDataManager.saveProduct/deleteProduct.
+ */
+public class ProductIndex {
+    // Field order and relevance boosts: name > keywords > description > category
+    private static final float[] BOOSTS = {3.0f, 2.0f, 1.0f, 0.5f};
+
+    private final IntFunction<Product> lookup;
+    private final InvertedIndex text = new InvertedIndex(BOOSTS);
+    // Spelling correction over name and keyword terms
+    private final TrigramIndex fuzzy = new TrigramIndex(Config.getLong("search.fuzzyBudgetMs", 3));
+    private final FacetIndex facets = new FacetIndex();
+    private final PriceIndex prices = new PriceIndex();
+    // Every indexed id, ascending
+    private final IntList ids = new IntList();
+    // Units sold per product id, the popularity signal for suggestions
+    private int[] sales = new int[1024];
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Bumped on every product change; the suggester records the version it was built from
+    private final AtomicLong version = new AtomicLong();
+    private volatile Suggester suggester = Suggester.empty();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    /** @param lookup current product for an id, or null */
+    public ProductIndex(IntFunction<Product> lookup) {
+        this.lookup = lookup;
+    }
+
+    public void add(Product product) {
+        int id = product.getId();
+        List<List<String>> fields = fields(product);
+        text.index(id, fields);
+        List<String> vocabulary = new ArrayList<>(fields.get(0));
+        vocabulary.addAll(fields.get(1));
+        fuzzy.index(id, vocabulary);
+        facets.index(id, product.getCategory(), product.getSubcategory(), product.getPrice());
+        prices.index(id, product.getPrice());
+        lock.writeLock().lock();
+        try {
+            int at = ids.lowerBound(id);
+            if (at == ids.size() || ids.get(at) != id) {
+                ids.insert(at, id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        version.incrementAndGet();
+    }
+
+    /**
+     * Indexes a batch and runs {@code publish} (the catalog swap) before any
+     * search can start again, so searches see all of the batch or none of it.
+     */
+    public void apply(Collection<Product> upserts, Collection<Integer> deletes, Runnable publish) {
+        lock.writeLock().lock();
+        try {
+            upserts.forEach(this::add);
+            deletes.forEach(this::remove);
+            publish.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int id) {
+        text.remove(id);
+        fuzzy.remove(id);
+        facets.remove(id);
+        prices.remove(id);
+        lock.writeLock().lock();
+        try {
+            ids.removeSorted(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        version.incrementAndGet();
+    }
+
+    // Counted when an order is first stored; picked up by the next suggester build
+    public void recordSale(int productId, int quantity) {
+        // Order lines can name any id; only ones a product could have are counted
+        if (!Product.isValidId(productId) || quantity <= 0) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (productId >= sales.length) {
+                sales = Arrays.copyOf(sales, Math.max(productId + 1, sales.length * 2));
+            }
+            sales[productId] += quantity;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Autocomplete over product names, keywords and subcategories. Served
+     * from the current immutable Suggester without locking; if the catalog
+     * has changed since it was built, a replacement is built in the
+     * background and this lookup still uses the old one.
+     */
+    public List<String> suggest(String prefix, int limit) {
+        Suggester current = suggester;
+        if (current.getVersion() != version.get() && rebuilding.compareAndSet(false, true)) {
+            CompletableFuture.runAsync(() -> {
+                try {
+                    rebuildSuggestions();
+                } catch (RuntimeException e) {
+                    System.err.println("Error rebuilding suggestions: " + e.getMessage());
+                    e.printStackTrace();
+                } finally {
+                    rebuilding.set(false);
+                }
+            });
+        }
+        return current.suggest(prefix, limit);
+    }
+
+    public void rebuildSuggestions() {
+        long built = version.get();
+        Suggester.Builder builder = new Suggester.Builder();
+        for (int id : allIds()) {
+            Product product = lookup.apply(id);
+            if (product == null) continue;
+            int weight = 1 + unitsSold(id);
+            builder.add(product.getName(), weight);
+            if (product.getKeywords() != null) {
+                for (String keyword : product.getKeywords()) {
+                    builder.add(keyword, weight);
+                }
+            }
+            builder.add(product.getSubcategory(), weight);
+        }
+        suggester = builder.build(built);
+    }
+
+    private int unitsSold(int id) {
+        lock.readLock().lock();
+        try {
+            return id < sales.length ? sales[id] : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Matches the request's words (name, description, keywords, category
+     * and subcategory) and filters, then returns the requested page. Only
+     * offset + limit candidates are ever ordered. With a cursor the page
+     * starts right after the cursor's item, so deep pages cost the same as
+     * the first and stay stable while products are added or removed.
+     */
+    public SearchResult search(SearchRequest request) {
+        // Held throughout, so a batch from apply() is never seen half done
+        lock.readLock().lock();
+        try {
+            return searchLocked(request);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private SearchResult searchLocked(SearchRequest request) {
+        List<List<String>> groups = request.hasText() ? resolve(Tokenizer.tokenize(request.getText())) : List.of();
+        List<String> terms = new ArrayList<>();
+        groups.forEach(terms::addAll);
+        BitSet filter = facets.filter(request.getCategory(), request.getSubcategory(), request.getPriceRange());
+        int minCents = PriceIndex.toCents(request.getMinPrice());
+        int maxCents = request.getMaxPrice() == Double.MAX_VALUE
+                ? Integer.MAX_VALUE : PriceIndex.toCents(request.getMaxPrice());
+        SearchRequest.Sort sort = request.getEffectiveSort();
+        boolean byPrice = sort == SearchRequest.Sort.PRICE || sort == SearchRequest.Sort.PRICE_DESC;
+        boolean descending = sort == SearchRequest.Sort.PRICE_DESC || sort == SearchRequest.Sort.NEWEST;
+        Cursor after = request.getAfter();
+        if (after != null && after.getSort() != sort) {
+            throw new IllegalArgumentException("Cursor belongs to sort " + after.getSort());
+        }
+        int limit = request.getLimit();
+        int offset = after != null ? 0 : request.getOffset();
+        boolean unfiltered = !request.hasText() && filter == null && !request.isFacets();
+
+        // Price order over the whole catalog is a slice of the price index
+        if (unfiltered && byPrice) {
+            int[] page = after != null
+                    ? prices.rangeAfter(minCents, maxCents, descending, PriceIndex.key((int) after.getKey(), after.getId()), limit)
+                    : prices.range(minCents, maxCents, descending, offset, limit);
+            int[] cents = prices.cents(page);
+            return withCursor(new SearchResult(page, prices.count(minCents, maxCents)), sort, limit,
+                    i -> cents[i]);
+        }
+        // So is id order over the whole catalog, of the id list
+        if (unfiltered && !request.hasPriceFilter() && !byPrice) {
+            return withCursor(idPage(after, descending, offset, limit), sort, limit, i -> 0);
+        }
+
+        int[] candidates = candidates(request, groups, filter, minCents, maxCents);
+        int total = candidates.length;
+        SearchResult result;
+
+        switch (sort) {
+            case RELEVANCE -> {
+                float[] scores = text.score(terms, candidates);
+                TopK.Ranking ranking = (a, b) -> {
+                    int c = Float.compare(scores[b], scores[a]);
+                    return c != 0 ? c : Integer.compare(candidates[a], candidates[b]);
+                };
+                int[] pool = after == null ? null : pastCursor(total, i -> {
+                    int c = Float.compare(Float.intBitsToFloat((int) after.getKey()), scores[i]);
+                    return c != 0 ? c : Integer.compare(candidates[i], after.getId());
+                });
+                int[] order = rank(total, pool, offset, limit, ranking);
+                result = withCursor(new SearchResult(pick(candidates, order), total), sort, limit,
+                        i -> Float.floatToIntBits(scores[order[i]]));
+            }
+            case PRICE, PRICE_DESC -> {
+                long[] keys = new long[total];
+                int[] cents = prices.cents(candidates);
+                for (int i = 0; i < total; i++) {
+                    keys[i] = PriceIndex.key(cents[i], candidates[i]);
+                }
+                int direction = descending ? -1 : 1;
+                int[] pool = after == null ? null : pastCursor(total,
+                        i -> direction * Long.compare(keys[i], PriceIndex.key((int) after.getKey(), after.getId())));
+                int[] order = rank(total, pool, offset, limit, (a, b) -> direction * Long.compare(keys[a], keys[b]));
+                result = withCursor(new SearchResult(pick(candidates, order), total), sort, limit,
+                        i -> cents[order[i]]);
+            }
+            default -> {
+                // Candidates are ascending by id, and ids are handed out in creation order
+                int from = offset;
+                if (after != null) {
+                    int at = lowerBound(candidates, descending ? after.getId() : after.getId() + 1);
+                    from = descending ? total - at : at;
+                }
+                int n = (int) Math.max(0, Math.min((long) limit, (long) total - from));
+                int[] page = new int[n];
+                for (int i = 0; i < n; i++) {
+                    page[i] = descending ? candidates[total - 1 - from - i] : candidates[from + i];
+                }
+                result = withCursor(new SearchResult(page, total), sort, limit, i -> 0);
+            }
+        }
+
+        if (request.isFacets()) {
+            BitSet matches = new BitSet();
+            for (int id : candidates) {
+                matches.set(id);
+            }
+            result.setFacets(facets.counts(matches));
+        }
+        return result;
+    }
+
+    // Sets the cursor for the next page when this one came back full
+    private static SearchResult withCursor(SearchResult result, SearchRequest.Sort sort, int limit,
+                                           IntToLongFunction sortKey) {
+        int[] page = result.getIds();
+        if (limit != Integer.MAX_VALUE && page.length == limit && limit > 0) {
+            int last = page.length - 1;
+            result.setNextCursor(new Cursor(sort, sortKey.applyAsLong(last), page[last]).encode());
+        }
+        return result;
+    }
+
+    // Candidate indices ranked strictly after the cursor (comparison > 0)
+    private static int[] pastCursor(int total, IntUnaryOperator compareToCursor) {
+        int[] pool = new int[total];
+        int n = 0;
+        for (int i = 0; i < total; i++) {
+            if (compareToCursor.applyAsInt(i) > 0) {
+                pool[n++] = i;
+            }
+        }
+        return Arrays.copyOf(pool, n);
+    }
+
+    // Best candidate indices for the page, from all candidates or only those in the pool
+    private static int[] rank(int total, int[] pool, int offset, int limit, TopK.Ranking ranking) {
+        int k = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+        if (pool == null) {
+            int[] order = TopK.select(total, k, ranking);
+            return Arrays.copyOfRange(order, Math.min(offset, order.length), order.length);
+        }
+        int[] order = TopK.select(pool.length, limit, (a, b) -> ranking.compare(pool[a], pool[b]));
+        for (int i = 0; i < order.length; i++) {
+            order[i] = pool[order[i]];
+        }
+        return order;
+    }
+
+    private SearchResult idPage(Cursor after, boolean descending, int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            int total = ids.size();
+            int from = offset;
+            if (after != null) {
+                int at = ids.lowerBound(descending ? after.getId() : after.getId() + 1);
+                from = descending ? total - at : at;
+            }
+            int n = (int) Math.max(0, Math.min((long) limit, (long) total - from));
+            int[] page = new int[n];
+            for (int i = 0; i < n; i++) {
+                page[i] = ids.get(descending ? total - 1 - from - i : from + i);
+            }
+            return new SearchResult(page, total);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static int lowerBound(int[] sorted, int value) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Every product passing the request's words and filters, ascending by id
+    private int[] candidates(SearchRequest request, List<List<String>> groups, BitSet filter,
+                             int minCents, int maxCents) {
+        int[] candidates;
+        if (request.hasText()) {
+            int[] matched = text.query(groups, request.isMatchAll());
+            candidates = filter == null ? matched : retain(matched, filter);
+        } else if (filter != null) {
+            candidates = filter.stream().toArray();
+        } else if (request.hasPriceFilter()) {
+            candidates = prices.range(minCents, maxCents, false, 0, Integer.MAX_VALUE);
+            Arrays.sort(candidates);
+            return candidates;
+        } else {
+            return allIds();
+        }
+        return request.hasPriceFilter() ? retainPrices(candidates, minCents, maxCents) : candidates;
+    }
+
+    // Words nothing in the catalog starts with are replaced by their closest spellings
+    private List<List<String>> resolve(List<String> words) {
+        List<List<String>> groups = new ArrayList<>(words.size());
+        for (String word : words) {
+            groups.add(text.hasPrefix(word) ? List.of(word) : fuzzy.corrections(word));
+        }
+        return groups;
+    }
+
+    private int[] allIds() {
+        lock.readLock().lock();
+        try {
+            return ids.toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static int[] retain(int[] candidates, BitSet filter) {
+        int[] out = new int[candidates.length];
+        int n = 0;
+        for (int id : candidates) {
+            if (filter.get(id)) {
+                out[n++] = id;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private int[] retainPrices(int[] candidates, int minCents, int maxCents) {
+        int[] cents = prices.cents(candidates);
+        int[] out = new int[candidates.length];
+        int n = 0;
+        for (int i = 0; i < candidates.length; i++) {
+            if (cents[i] >= minCents && cents[i] <= maxCents) {
+                out[n++] = candidates[i];
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static int[] pick(int[] candidates, int[] order) {
+        int[] page = new int[order.length];
+        for (int i = 0; i < page.length; i++) {
+            page[i] = candidates[order[i]];
+        }
+        return page;
+    }
+
+    private static List<List<String>> fields(Product product) {
+        List<String> keywords = new ArrayList<>();
+        if (product.getKeywords() != null) {
+            for (String keyword : product.getKeywords()) {
+                keywords.addAll(Tokenizer.tokenize(keyword));
+            }
+        }
+        List<String> category = new ArrayList<>(Tokenizer.tokenize(product.getCategory()));
+        category.addAll(Tokenizer.tokenize(product.getSubcategory()));
+        return List.of(
+                Tokenizer.tokenize(product.getName()),
+                keywords,
+                Tokenizer.tokenize(product.getDescription()),
+                category);
+    }
+}
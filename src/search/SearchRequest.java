@@ -0,0 +1,132 @@
+package search;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A product listing query: optional search words and filters, an order,
+ * and the page wanted.
+ */
+public class SearchRequest {
+    public enum Sort {
+        // Ascending id, the catalog's natural order
+        ID,
+        RELEVANCE,
+        PRICE,
+        PRICE_DESC,
+        NEWEST;
+
+        public static Sort fromString(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown sort: " + value);
+            }
+        }
+    }
+
+    private String text;
+    private boolean matchAll = true;
+    private String category;
+    private String subcategory;
+    // One of the facet price range labels, e.g. "10-25"
+    private String priceRange;
+    private boolean facets;
+    private double minPrice;
+    private double maxPrice = Double.MAX_VALUE;
+    private Sort sort;
+    private int offset;
+    private int limit = Integer.MAX_VALUE;
+    // Keyset position; when set, the offset is ignored
+    private Cursor after;
+
+    /**
+     * Reads keywords, match (all|any), category, subcategory, price,
+     * minPrice/maxPrice, facets, sort, page/limit and after (a cursor from a
+     * previous page) from already-split query parameters.
+     */
+    public static SearchRequest fromParams(Map<String, String> params) {
+        SearchRequest request = new SearchRequest();
+        if (params.containsKey("keywords")) {
+            request.setText(decode(params.get("keywords")));
+        }
+        request.setMatchAll(!"any".equalsIgnoreCase(params.get("match")));
+        if (params.containsKey("category")) {
+            request.setCategory(decode(params.get("category")));
+        }
+        if (params.containsKey("subcategory")) {
+            request.setSubcategory(decode(params.get("subcategory")));
+        }
+        if (params.containsKey("price")) {
+            request.setPriceRange(decode(params.get("price")));
+        }
+        if (params.containsKey("minPrice")) {
+            request.setMinPrice(Double.parseDouble(params.get("minPrice")));
+        }
+        if (params.containsKey("maxPrice")) {
+            request.setMaxPrice(Double.parseDouble(params.get("maxPrice")));
+        }
+        request.setFacets("true".equalsIgnoreCase(params.get("facets")));
+        if (params.containsKey("sort")) {
+            request.setSort(Sort.fromString(params.get("sort")));
+        }
+        if (params.containsKey("limit")) {
+            int limit = Integer.parseInt(params.get("limit"));
+            int page = Integer.parseInt(params.getOrDefault("page", "1"));
+            request.setLimit(limit);
+            request.setOffset((int) Math.min(Integer.MAX_VALUE, (long) (page - 1) * limit));
+        }
+        if (params.containsKey("after")) {
+            request.setAfter(Cursor.decode(params.get("after")));
+        }
+        return request;
+    }
+
+    private static String decode(String value) {
+        return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+
+    public boolean hasPriceFilter() {
+        return minPrice > 0 || maxPrice != Double.MAX_VALUE;
+    }
+
+    public boolean hasText() {
+        return text != null && !text.isBlank();
+    }
+
+    // Relevance when searching, catalog order otherwise
+    public Sort getEffectiveSort() {
+        if (sort == null || (sort == Sort.RELEVANCE && !hasText())) {
+            return hasText() ? Sort.RELEVANCE : Sort.ID;
+        }
+        return sort;
+    }
+
+    public String getText() { return text; }
+    public boolean isMatchAll() { return matchAll; }
+    public String getCategory() { return category; }
+    public String getSubcategory() { return subcategory; }
+    public String getPriceRange() { return priceRange; }
+    public boolean isFacets() { return facets; }
+    public double getMinPrice() { return minPrice; }
+    public double getMaxPrice() { return maxPrice; }
+    public Sort getSort() { return sort; }
+    public int getOffset() { return offset; }
+    public int getLimit() { return limit; }
+    public Cursor getAfter() { return after; }
+
+    public void setText(String text) { this.text = text; }
+    public void setMatchAll(boolean matchAll) { this.matchAll = matchAll; }
+    public void setCategory(String category) { this.category = category; }
+    public void setSubcategory(String subcategory) { this.subcategory = subcategory; }
+    public void setPriceRange(String priceRange) { this.priceRange = priceRange; }
+    public void setFacets(boolean facets) { this.facets = facets; }
+    public void setMinPrice(double minPrice) { this.minPrice = Math.max(0, minPrice); }
+    public void setMaxPrice(double maxPrice) { this.maxPrice = maxPrice; }
+    public void setSort(Sort sort) { this.sort = sort; }
+    public void setOffset(int offset) { this.offset = Math.max(0, offset); }
+    public void setLimit(int limit) { this.limit = Math.max(0, limit); }
+    public void setAfter(Cursor after) { this.after = after; }
+}
@@ -0,0 +1,26 @@
+package search;
+
+import java.util.Map;
+
+/** One page of product ids in the requested order, and how many matched overall. */
+public class SearchResult {
+    private final int[] ids;
+    private final int total;
+    // Facet name -> value -> count, only when requested
+    private Map<String, Map<String, Integer>> facets;
+    // Opaque token for the page after this one, null on the last page
+    private String nextCursor;
+
+    public SearchResult(int[] ids, int total) {
+        this.ids = ids;
+        this.total = total;
+    }
+
+    public int[] getIds() { return ids; }
+    public int getTotal() { return total; }
+    public Map<String, Map<String, Integer>> getFacets() { return facets; }
+    public String getNextCursor() { return nextCursor; }
+
+    public void setFacets(Map<String, Map<String, Integer>> facets) { this.facets = facets; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+}
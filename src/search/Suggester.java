@@ -0,0 +1,103 @@
+package search;
+
+import java.util.*;
+
+/**
+ * Immutable autocomplete dictionary: suggestion keys in one sorted array
+ * with parallel display strings and popularity weights. A prefix maps to a
+ * contiguous range found by two binary searches, and the best entries of
+ * that range are picked with a bounded heap. Instances are never modified,
+ * so lookups need no locking; a catalog change builds a new one.
+ */
+public final class Suggester {
+    private final long version;
+    private final String[] keys;
+    private final String[] texts;
+    private final int[] weights;
+
+    private Suggester(long version, String[] keys, String[] texts, int[] weights) {
+        this.version = version;
+        this.keys = keys;
+        this.texts = texts;
+        this.weights = weights;
+    }
+
+    /** Collects entries and freezes them into a Suggester. */
+    public static final class Builder {
+        private final Map<String, String> texts = new HashMap<>();
+        private final Map<String, Integer> weights = new HashMap<>();
+
+        // Entries equal ignoring case share one key and add up their weight
+        public void add(String text, int weight) {
+            if (text == null || text.isBlank()) {
+                return;
+            }
+            String display = text.trim();
+            String key = normalize(display);
+            texts.putIfAbsent(key, display);
+            weights.merge(key, weight, Integer::sum);
+        }
+
+        public Suggester build(long version) {
+            String[] keys = texts.keySet().toArray(new String[0]);
+            Arrays.sort(keys);
+            String[] display = new String[keys.length];
+            int[] weight = new int[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                display[i] = texts.get(keys[i]);
+                weight[i] = weights.get(keys[i]);
+            }
+            return new Suggester(version, keys, display, weight);
+        }
+    }
+
+    public static Suggester empty() {
+        return new Suggester(-1, new String[0], new String[0], new int[0]);
+    }
+
+    /** The catalog version this was built from. */
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    /** Up to {@code limit} suggestions starting with {@code prefix}, most popular first. */
+    public List<String> suggest(String prefix, int limit) {
+        String key = normalize(prefix);
+        if (key.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        int from = lowerBound(key);
+        int to = lowerBound(key + Character.MAX_VALUE);
+        int[] best = TopK.select(to - from, limit, (a, b) -> {
+            int c = Integer.compare(weights[from + b], weights[from + a]);
+            return c != 0 ? c : Integer.compare(keys[from + a].length(), keys[from + b].length());
+        });
+        List<String> result = new ArrayList<>(best.length);
+        for (int i : best) {
+            result.add(texts[from + i]);
+        }
+        return result;
+    }
+
+    private int lowerBound(String key) {
+        int lo = 0;
+        int hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid].compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static String normalize(String text) {
+        return text.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+    }
+}
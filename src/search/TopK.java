@@ -0,0 +1,73 @@
+package search;
+
+/**
+ * Bounded selection of the best {@code k} of {@code n} candidates with a
+ * binary heap of candidate indices: O(n log k) time and O(k) space, so a
+ * first page never sorts the whole match set.
+ */
+public final class TopK {
+    /** Negative if candidate {@code a} ranks before candidate {@code b}. */
+    @FunctionalInterface
+    public interface Ranking {
+        int compare(int a, int b);
+    }
+
+    private TopK() {
+    }
+
+    /** Indices of the best {@code k} candidates, best first. */
+    public static int[] select(int n, int k, Ranking ranking) {
+        k = Math.min(k, n);
+        if (k <= 0) {
+            return new int[0];
+        }
+        // Heap with the worst kept candidate at the root
+        int[] heap = new int[k];
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            if (size < k) {
+                heap[size] = i;
+                siftUp(heap, size++, ranking);
+            } else if (ranking.compare(i, heap[0]) < 0) {
+                heap[0] = i;
+                siftDown(heap, size, ranking);
+            }
+        }
+        // Pop worst-first into the tail to get best-first order
+        int[] result = new int[size];
+        for (int end = size - 1; end >= 0; end--) {
+            result[end] = heap[0];
+            heap[0] = heap[end];
+            siftDown(heap, end, ranking);
+        }
+        return result;
+    }
+
+    private static void siftUp(int[] heap, int at, Ranking ranking) {
+        int value = heap[at];
+        while (at > 0) {
+            int parent = (at - 1) >>> 1;
+            if (ranking.compare(heap[parent], value) >= 0) break;
+            heap[at] = heap[parent];
+            at = parent;
+        }
+        heap[at] = value;
+    }
+
+    private static void siftDown(int[] heap, int size, Ranking ranking) {
+        if (size == 0) return;
+        int value = heap[0];
+        int at = 0;
+        while (true) {
+            int child = 2 * at + 1;
+            if (child >= size) break;
+            if (child + 1 < size && ranking.compare(heap[child + 1], heap[child]) > 0) {
+                child++;
+            }
+            if (ranking.compare(heap[child], value) <= 0) break;
+            heap[at] = heap[child];
+            at = child;
+        }
+        heap[at] = value;
+    }
+}
@@ -0,0 +1,192 @@
+package search;
+
+import store.IntList;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Character trigram index over a term vocabulary, used to correct
+ * misspelled query words ("hodie" -> "hoodie"). Trigrams propose
+ * candidate terms; a bounded edit distance (with transpositions) decides.
+ *
+ * Terms are reference counted per document so the vocabulary follows
+ * product updates and deletions. Every lookup runs against a time budget
+ * and returns whatever it has verified when the budget runs out.
+ */
+public class TrigramIndex {
+    // Best corrections returned per word
+    private static final int MAX_EXPANSIONS = 5;
+    // Candidates verified per word, in order of shared trigrams
+    private static final int MAX_VERIFIED = 256;
+
+    private final long budgetNanos;
+
+    // Term ordinal <-> term, with a live document count per ordinal
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final List<String> terms = new ArrayList<>();
+    private int[] refs = new int[1024];
+
+    private final Map<String, IntList> grams = new HashMap<>();
+    private final Map<Integer, String[]> docTerms = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public TrigramIndex(long budgetMillis) {
+        this.budgetNanos = budgetMillis * 1_000_000;
+    }
+
+    /** Replaces the terms contributed by document {@code id}. */
+    public void index(int id, Collection<String> docTermList) {
+        String[] distinct = new LinkedHashSet<>(docTermList).toArray(new String[0]);
+        lock.writeLock().lock();
+        try {
+            release(id);
+            for (String term : distinct) {
+                int ordinal = ordinal(term);
+                refs[ordinal]++;
+            }
+            docTerms.put(id, distinct);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            release(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Vocabulary terms within the edit budget of {@code word}, closest first.
+     * Words shorter than four characters are not corrected.
+     */
+    public List<String> corrections(String word) {
+        int maxEdits = word.length() < 4 ? 0 : word.length() < 8 ? 1 : 2;
+        if (maxEdits == 0) {
+            return List.of();
+        }
+        long deadline = System.nanoTime() + budgetNanos;
+        List<String> queryGrams = trigrams(word);
+        // Each edit destroys at most three trigrams
+        int minShared = Math.max(1, queryGrams.size() - 3 * maxEdits);
+
+        lock.readLock().lock();
+        try {
+            Map<Integer, Integer> shared = new HashMap<>();
+            for (String gram : queryGrams) {
+                IntList list = grams.get(gram);
+                if (list == null) continue;
+                for (int i = 0; i < list.size(); i++) {
+                    shared.merge(list.get(i), 1, Integer::sum);
+                }
+                if (System.nanoTime() > deadline) break;
+            }
+
+            List<int[]> candidates = new ArrayList<>();
+            for (Map.Entry<Integer, Integer> entry : shared.entrySet()) {
+                int ordinal = entry.getKey();
+                if (entry.getValue() >= minShared && refs[ordinal] > 0
+                        && Math.abs(terms.get(ordinal).length() - word.length()) <= maxEdits) {
+                    candidates.add(new int[]{ordinal, entry.getValue()});
+                }
+            }
+            candidates.sort((a, b) -> Integer.compare(b[1], a[1]));
+
+            List<int[]> matches = new ArrayList<>();
+            for (int i = 0; i < candidates.size() && i < MAX_VERIFIED; i++) {
+                int ordinal = candidates.get(i)[0];
+                int distance = distance(word, terms.get(ordinal), maxEdits);
+                if (distance <= maxEdits) {
+                    matches.add(new int[]{ordinal, distance, refs[ordinal]});
+                }
+                if (System.nanoTime() > deadline) break;
+            }
+            // Closest first, then the term used by more products
+            matches.sort((a, b) -> a[1] != b[1] ? Integer.compare(a[1], b[1]) : Integer.compare(b[2], a[2]));
+
+            List<String> result = new ArrayList<>();
+            for (int i = 0; i < matches.size() && i < MAX_EXPANSIONS; i++) {
+                result.add(terms.get(matches.get(i)[0]));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Callers hold the write lock for the next two methods
+
+    private int ordinal(String term) {
+        Integer ordinal = ordinals.get(term);
+        if (ordinal == null) {
+            ordinal = terms.size();
+            terms.add(term);
+            ordinals.put(term, ordinal);
+            if (ordinal >= refs.length) {
+                refs = Arrays.copyOf(refs, refs.length * 2);
+            }
+            for (String gram : trigrams(term)) {
+                grams.computeIfAbsent(gram, g -> new IntList()).add(ordinal);
+            }
+        }
+        return ordinal;
+    }
+
+    // Unreferenced terms keep their ordinal and are skipped until reused
+    private void release(int id) {
+        String[] previous = docTerms.remove(id);
+        if (previous != null) {
+            for (String term : previous) {
+                refs[ordinals.get(term)]--;
+            }
+        }
+    }
+
+    static List<String> trigrams(String term) {
+        String padded = "$" + term + "$";
+        List<String> result = new ArrayList<>(padded.length());
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            result.add(padded.substring(i, i + 3));
+        }
+        return result;
+    }
+
+    /**
+     * Optimal string alignment distance, giving up as soon as it must exceed
+     * {@code max} (returns max + 1 then).
+     */
+    static int distance(String a, String b, int max) {
+        int n = a.length();
+        int m = b.length();
+        int[] before = new int[m + 1];
+        int[] previous = new int[m + 1];
+        int[] current = new int[m + 1];
+        for (int j = 0; j <= m; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= n; i++) {
+            current[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= m; j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int d = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d = Math.min(d, before[j - 2] + 1);
+                }
+                current[j] = d;
+                rowMin = Math.min(rowMin, d);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] recycled = before;
+            before = previous;
+            previous = current;
+            current = recycled;
+        }
+        return Math.min(previous[m], max + 1);
+    }
+}
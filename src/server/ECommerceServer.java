@@ -1,19 +1,26 @@
 package server;
 
+import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 import handler.*;
 import service.*;
+import store.DataStore;
+import utils.Config;
 import utils.JsonDataManager;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
 
 public class ECommerceServer {
     private static final int PORT = 8000;
     private HttpServer server;
-    private JsonDataManager dataManager;
+    private ExecutorService executor;
+    private String executorMode;
+    private String engine;
+    private DataStore dataManager;
     private ProductService productService;
     private OrderService orderService;
     private CartService cartService;
@@ -21,7 +28,11 @@ public class ECommerceServer {
 
     public ECommerceServer() throws IOException {
         // Create data directory if it doesn't exist
-        Files.createDirectories(Paths.get("src/data"));
+        Path dataDir = Paths.get(Config.get("data.dir", "src/data"));
+        Files.createDirectories(dataDir);
+
+        // Pick the storage engine (json, binary or memory) before anything touches the data
+        JsonDataManager.configure(Config.get("store.engine", "json"), dataDir);
 
         // Initialize data manager and services
         dataManager = JsonDataManager.getInstance();
@@ -30,32 +41,47 @@ public class ECommerceServer {
         cartService = CartService.getInstance();
         userService = UserService.getInstance();
 
-        // Initialize server with a larger backlog
-        server = HttpServer.create(new InetSocketAddress(PORT), 100);
+        // Small JSON responses otherwise sit out the client's delayed ACK (~40 ms each)
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+
+        // Initialize server with a larger backlog; jdk (default) or nio, see NioHttpServer
+        engine = Config.get("http.engine", "jdk");
+        server = "nio".equals(engine)
+                ? NioHttpServer.create(new InetSocketAddress(PORT), 100)
+                : HttpServer.create(new InetSocketAddress(PORT), 100);
 
         // Set up routes with CORS handlers
         setupRoutes();
 
-        // Use a thread pool with fixed size
-        server.setExecutor(Executors.newFixedThreadPool(10));
+        // fixed (default), workstealing or virtual; see ServerExecutors
+        executorMode = Config.get("http.executor", "fixed");
+        executor = ServerExecutors.create(executorMode, Config.getInt("http.threads", 10));
+        server.setExecutor(executor);
     }
 
     private void setupRoutes() {
-        // Wrap all handlers with CORS handler
-        server.createContext("/", new CORSHandler(new RootHandler()));
-        server.createContext("/api/products", new CORSHandler(new ProductHandler(productService)));
-        server.createContext("/api/orders", new CORSHandler(new OrderHandler(orderService)));
-        server.createContext("/api/cart", new CORSHandler(new CartHandler(cartService)));
-        server.createContext("/api/users", new CORSHandler(new UserHandler(userService)));
+        // Wrap all handlers with CORS and response compression
+        server.createContext("/", wrap(new RootHandler()));
+        server.createContext("/api/products", wrap(new ProductHandler(productService)));
+        server.createContext("/api/orders", wrap(new OrderHandler(orderService)));
+        server.createContext("/api/cart", wrap(new CartHandler(cartService)));
+        server.createContext("/api/users", wrap(new UserHandler(userService)));
 
         // Add admin routes
-        server.createContext("/api/admin", new CORSHandler(
+        server.createContext("/api/admin", wrap(
                 new AdminHandler(productService, userService, orderService)
         ));
     }
 
+    private static HttpHandler wrap(HttpHandler handler) {
+        return new CORSHandler(new CompressionHandler(handler));
+    }
+
     public void start() {
         server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "shutdown"));
         System.out.println("\n=== E-Commerce Server Started ===");
         System.out.println("Server running on port: " + PORT);
         System.out.println("\nAvailable endpoints:");
@@ -65,9 +91,20 @@ public class ECommerceServer {
         System.out.println("- http://localhost:" + PORT + "/api/cart");
         System.out.println("- http://localhost:" + PORT + "/api/users");
         System.out.println("- http://localhost:" + PORT + "/api/admin");
+        System.out.println("\nStorage engine: " + dataManager.getEngineName());
+        System.out.println("HTTP engine: " + engine);
+        System.out.println("Request executor: " + executorMode);
         System.out.println("\nPress Ctrl+C to stop the server");
     }
 
+    // Stop accepting requests, then flush whatever the persister still holds
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+        dataManager.close();
+        System.out.println("Server stopped");
+    }
+
     public static void main(String[] args) {
         try {
             ECommerceServer server = new ECommerceServer();
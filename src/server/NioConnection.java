@@ -0,0 +1,447 @@
+package server;
+
+import com.sun.net.httpserver.Headers;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One client connection. The selector thread reads and parses; complete
+ * requests queue up here (pipelining) and one worker at a time serves
+ * them in arrival order, writing each response before taking the next.
+ * Reading pauses while too many parsed requests are waiting.
+ */
+final class NioConnection {
+    private static final int MAX_HEADER_BYTES = 64 * 1024;
+    private static final int MAX_PIPELINED = 16;
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    /** A parsed request, or a parse failure to be answered in its place. */
+    static final class Request {
+        String method;
+        String uri;
+        String protocol;
+        final Headers headers = new Headers();
+        byte[] body = new byte[0];
+        int bodyLength;
+        boolean keepAlive;
+        int errorStatus;
+        String errorMessage;
+
+        static Request error(int status, String message) {
+            Request request = new Request();
+            request.errorStatus = status;
+            request.errorMessage = message;
+            return request;
+        }
+    }
+
+    final SocketChannel channel;
+    private final NioHttpServer server;
+    private SelectionKey key;
+
+    // Selector thread only: unparsed input and the request being assembled
+    private byte[] input = new byte[4096];
+    private int start;
+    private int end;
+    private Request partial;
+    private long bodyRemaining;
+    private boolean chunked;
+    private ByteArrayOutputStream chunkedBody;
+    private int chunkState;
+    private boolean failed;
+    private volatile long lastActive = System.nanoTime();
+
+    // Shared between the selector thread and the serving worker
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<Request> pending = new ArrayDeque<>();
+    private boolean busy;
+    private boolean inputClosed;
+    private boolean paused;
+    private boolean closed;
+
+    // Created on first use by a worker whose write found the socket buffer full
+    private Selector writeSelector;
+
+    NioConnection(SocketChannel channel, NioHttpServer server) {
+        this.channel = channel;
+        this.server = server;
+    }
+
+    void register(Selector selector) throws IOException {
+        key = channel.register(selector, SelectionKey.OP_READ, this);
+    }
+
+    boolean isIdleSince(long nanos) {
+        lock.lock();
+        try {
+            return !busy && pending.isEmpty() && lastActive < nanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Selector thread: drain the socket, then parse whatever is complete
+    void onReadable(BufferPool pool) {
+        ByteBuffer buffer = pool.acquire();
+        int n;
+        try {
+            while ((n = channel.read(buffer)) > 0) {
+                buffer.flip();
+                append(buffer);
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            close();
+            return;
+        } finally {
+            pool.release(buffer);
+        }
+        lastActive = System.nanoTime();
+        if (!failed) {
+            parse();
+        }
+        if (n < 0) {
+            inputEnded();
+        }
+    }
+
+    private void append(ByteBuffer buffer) {
+        int length = buffer.remaining();
+        if (end + length > input.length) {
+            // Compact first, grow only if that is not enough
+            System.arraycopy(input, start, input, 0, end - start);
+            end -= start;
+            start = 0;
+            if (end + length > input.length) {
+                byte[] grown = new byte[Math.max(input.length * 2, end + length)];
+                System.arraycopy(input, 0, grown, 0, end);
+                input = grown;
+            }
+        }
+        buffer.get(input, end, length);
+        end += length;
+    }
+
+    private void parse() {
+        try {
+            while (true) {
+                if (partial == null) {
+                    // Stray line breaks between pipelined requests are allowed
+                    while (end - start >= 2 && input[start] == '\r' && input[start + 1] == '\n') {
+                        start += 2;
+                    }
+                    int headerEnd = indexOfBlankLine();
+                    if (headerEnd < 0) {
+                        if (end - start > MAX_HEADER_BYTES) {
+                            throw new HttpError(431, "Request header too large");
+                        }
+                        return;
+                    }
+                    partial = parseHead(new String(input, start, headerEnd - start, StandardCharsets.ISO_8859_1));
+                    start = headerEnd + 4;
+                    if (!bodyComplete() && "100-continue".equalsIgnoreCase(partial.headers.getFirst("Expect"))) {
+                        sendContinue();
+                    }
+                }
+                if (!bodyComplete()) {
+                    return;
+                }
+                Request request = partial;
+                partial = null;
+                enqueue(request);
+            }
+        } catch (HttpError e) {
+            // Nothing after a malformed request can be trusted; answer it and stop reading
+            failed = true;
+            partial = null;
+            enqueue(Request.error(e.status, e.getMessage()));
+            pauseReading();
+        }
+    }
+
+    private int indexOfBlankLine() {
+        for (int i = start; i + 3 < end; i++) {
+            if (input[i] == '\r' && input[i + 1] == '\n' && input[i + 2] == '\r' && input[i + 3] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Request parseHead(String head) throws HttpError {
+        String[] lines = head.split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+            throw new HttpError(400, "Malformed request line");
+        }
+        Request request = new Request();
+        request.method = requestLine[0];
+        request.uri = requestLine[1];
+        request.protocol = requestLine[2];
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon <= 0) {
+                throw new HttpError(400, "Malformed header");
+            }
+            try {
+                request.headers.add(lines[i].substring(0, colon).trim(), lines[i].substring(colon + 1).trim());
+            } catch (IllegalArgumentException e) {
+                // Headers rejects bare CR/LF inside a value
+                throw new HttpError(400, "Malformed header");
+            }
+        }
+
+        String connection = request.headers.getFirst("Connection");
+        connection = connection == null ? "" : connection.toLowerCase(Locale.ROOT);
+        request.keepAlive = request.protocol.equals("HTTP/1.1")
+                ? !connection.contains("close") : connection.contains("keep-alive");
+
+        String transferEncoding = request.headers.getFirst("Transfer-Encoding");
+        String contentLength = request.headers.getFirst("Content-Length");
+        chunked = transferEncoding != null && transferEncoding.toLowerCase(Locale.ROOT).contains("chunked");
+        if (chunked) {
+            chunkedBody = new ByteArrayOutputStream();
+            chunkState = 0;
+            bodyRemaining = 0;
+        } else if (contentLength != null) {
+            try {
+                bodyRemaining = Long.parseLong(contentLength);
+            } catch (NumberFormatException e) {
+                throw new HttpError(400, "Bad Content-Length");
+            }
+            if (bodyRemaining < 0) {
+                throw new HttpError(400, "Bad Content-Length");
+            }
+            if (bodyRemaining > server.maxBodyBytes()) {
+                throw new HttpError(413, "Request body too large");
+            }
+            request.body = new byte[(int) bodyRemaining];
+        } else {
+            bodyRemaining = 0;
+        }
+        return request;
+    }
+
+    // Moves available body bytes into the partial request; true once it is complete
+    private boolean bodyComplete() throws HttpError {
+        if (!chunked) {
+            int take = (int) Math.min(bodyRemaining, end - start);
+            System.arraycopy(input, start, partial.body, partial.bodyLength, take);
+            partial.bodyLength += take;
+            start += take;
+            bodyRemaining -= take;
+            return bodyRemaining == 0;
+        }
+        // Chunk states: 0 size line, 1 data, 2 CRLF after data, 3 trailer lines
+        while (true) {
+            if (chunkState == 1) {
+                int take = (int) Math.min(bodyRemaining, end - start);
+                chunkedBody.write(input, start, take);
+                start += take;
+                bodyRemaining -= take;
+                if (bodyRemaining > 0) return false;
+                chunkState = 2;
+            }
+            int lineEnd = indexOfLineEnd();
+            if (lineEnd < 0) {
+                if (end - start > MAX_HEADER_BYTES) {
+                    throw new HttpError(400, "Malformed chunk");
+                }
+                return false;
+            }
+            String line = new String(input, start, lineEnd - start, StandardCharsets.ISO_8859_1);
+            start = lineEnd + 2;
+            if (chunkState == 2) {
+                if (!line.isEmpty()) throw new HttpError(400, "Malformed chunk");
+                chunkState = 0;
+            } else if (chunkState == 0) {
+                int semicolon = line.indexOf(';');
+                try {
+                    bodyRemaining = Long.parseLong((semicolon >= 0 ? line.substring(0, semicolon) : line).trim(), 16);
+                } catch (NumberFormatException e) {
+                    throw new HttpError(400, "Malformed chunk size");
+                }
+                if (bodyRemaining < 0 || chunkedBody.size() + bodyRemaining > server.maxBodyBytes()) {
+                    throw new HttpError(413, "Request body too large");
+                }
+                chunkState = bodyRemaining == 0 ? 3 : 1;
+            } else if (line.isEmpty()) {
+                // End of trailers
+                partial.body = chunkedBody.toByteArray();
+                partial.bodyLength = partial.body.length;
+                chunkedBody = null;
+                chunked = false;
+                return true;
+            }
+        }
+    }
+
+    private int indexOfLineEnd() {
+        for (int i = start; i + 1 < end; i++) {
+            if (input[i] == '\r' && input[i + 1] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Best effort: only when nothing else is being written on this connection
+    private void sendContinue() {
+        lock.lock();
+        try {
+            if (busy || !pending.isEmpty()) {
+                return;
+            }
+            channel.write(ByteBuffer.wrap(CONTINUE));
+        } catch (IOException e) {
+            // The final response will report the failure
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(Request request) {
+        boolean dispatch;
+        lock.lock();
+        try {
+            if (closed) return;
+            pending.add(request);
+            dispatch = !busy;
+            busy = true;
+            if (pending.size() >= MAX_PIPELINED) {
+                pauseReading();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (dispatch) {
+            server.dispatch(this);
+        }
+    }
+
+    private void inputEnded() {
+        lock.lock();
+        try {
+            inputClosed = true;
+            if (key.isValid()) {
+                key.interestOps(0);
+            }
+            if (busy || !pending.isEmpty()) {
+                // The worker closes once the queued responses are out
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        close();
+    }
+
+    private void pauseReading() {
+        lock.lock();
+        try {
+            paused = true;
+            if (key.isValid()) {
+                key.interestOps(0);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Worker: serve queued requests in order until none are left
+    void serve() {
+        while (true) {
+            Request request;
+            lock.lock();
+            try {
+                request = pending.poll();
+                if (request == null) {
+                    busy = false;
+                    if (inputClosed) {
+                        closeLocked();
+                    }
+                    return;
+                }
+                if (paused && !failed && pending.size() < MAX_PIPELINED / 2 && key.isValid()) {
+                    paused = false;
+                    key.interestOps(SelectionKey.OP_READ);
+                    server.wakeup();
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (!server.serve(this, request)) {
+                close();
+                return;
+            }
+            lastActive = System.nanoTime();
+        }
+    }
+
+    /** Writes the whole buffer, waiting (up to the write timeout) while the socket is full. */
+    void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.write(buffer) == 0) {
+                awaitWritable();
+            }
+        }
+    }
+
+    private void awaitWritable() throws IOException {
+        if (writeSelector == null) {
+            writeSelector = Selector.open();
+            channel.register(writeSelector, SelectionKey.OP_WRITE);
+        }
+        long timeoutMillis = TimeUnit.SECONDS.toMillis(server.writeTimeoutSeconds());
+        if (writeSelector.select(timeoutMillis) == 0) {
+            throw new IOException("Write timed out");
+        }
+        writeSelector.selectedKeys().clear();
+    }
+
+    void close() {
+        lock.lock();
+        try {
+            closeLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeLocked() {
+        if (closed) return;
+        closed = true;
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            if (writeSelector != null) {
+                writeSelector.close();
+            }
+            channel.close();
+        } catch (IOException e) {
+            // Already gone
+        }
+        server.closed(this);
+    }
+
+    static final class HttpError extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package server;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One request/response on an {@link NioConnection}. The status line,
+ * headers and body are assembled in a pooled direct buffer that goes to
+ * the socket whenever it fills up, so small responses leave in a single
+ * write. A response length of 0 means chunked transfer, -1 means no body,
+ * as with the JDK server.
+ */
+final class NioHttpExchange extends HttpExchange {
+    private static final byte[] CRLF = {'\r', '\n'};
+    // Chunk size as eight hex digits plus CRLF; leading zeros are legal
+    private static final int SIZE_LINE = 10;
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final NioConnection connection;
+    private final NioConnection.Request request;
+    private final NioHttpContext context;
+    private final BufferPool pool;
+    private final URI uri;
+    private final Headers responseHeaders = new Headers();
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    private InputStream requestBody;
+    private OutputStream responseBody;
+
+    private int status = -1;
+    private ByteBuffer wire;
+    private ResponseStream stream;
+    private boolean keepAlive;
+    private boolean finished;
+
+    NioHttpExchange(NioConnection connection, NioConnection.Request request, NioHttpContext context,
+                    URI uri, BufferPool pool) {
+        this.connection = connection;
+        this.request = request;
+        this.context = context;
+        this.uri = uri;
+        this.pool = pool;
+        this.keepAlive = request.keepAlive;
+        this.requestBody = new ByteArrayInputStream(request.body, 0, request.bodyLength);
+    }
+
+    @Override
+    public void sendResponseHeaders(int code, long length) throws IOException {
+        if (status != -1) {
+            throw new IOException("Headers already sent");
+        }
+        status = code;
+        boolean head = "HEAD".equals(request.method);
+        boolean bodiless = code == 204 || code == 304 || (code >= 100 && code < 200);
+        responseHeaders.remove("Content-Length");
+        responseHeaders.remove("Transfer-Encoding");
+        long bodyLength;
+        if (bodiless) {
+            bodyLength = -1;
+        } else if (length < 0) {
+            responseHeaders.set("Content-Length", "0");
+            bodyLength = -1;
+        } else if (length == 0) {
+            if (head) {
+                bodyLength = -1;
+            } else {
+                responseHeaders.set("Transfer-Encoding", "chunked");
+                bodyLength = 0;
+            }
+        } else {
+            responseHeaders.set("Content-Length", String.valueOf(length));
+            bodyLength = head ? -1 : length;
+        }
+        responseHeaders.set("Date", DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC)));
+        if (!keepAlive) {
+            responseHeaders.set("Connection", "close");
+        } else if (request.protocol.equals("HTTP/1.0")) {
+            responseHeaders.set("Connection", "keep-alive");
+        }
+
+        StringBuilder head0 = new StringBuilder(256);
+        head0.append("HTTP/1.1 ").append(code).append(' ').append(reason(code)).append("\r\n");
+        for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+            for (String value : header.getValue()) {
+                head0.append(header.getKey()).append(": ").append(value).append("\r\n");
+            }
+        }
+        head0.append("\r\n");
+
+        wire = pool.acquire();
+        stream = new ResponseStream(bodyLength);
+        stream.put(head0.toString().getBytes(StandardCharsets.ISO_8859_1));
+        if (bodyLength < 0) {
+            stream.close();
+        }
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+        if (responseBody != null) {
+            return responseBody;
+        }
+        // Like the JDK server, writing before the headers are sent is an error
+        return stream != null ? stream : new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                if (stream == null) throw new IOException("Response headers not sent");
+                stream.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (stream == null) throw new IOException("Response headers not sent");
+                stream.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (stream != null) stream.close();
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        try {
+            requestBody.close();
+            if (stream != null) {
+                stream.close();
+            }
+        } catch (IOException e) {
+            keepAlive = false;
+        }
+    }
+
+    /**
+     * Completes the exchange after the handler returned; true when the
+     * connection can carry the next request.
+     */
+    boolean finish() {
+        if (finished) {
+            return keepAlive;
+        }
+        finished = true;
+        if (status == -1) {
+            System.err.println("Handler for " + request.uri + " returned without sending a response");
+            return false;
+        }
+        close();
+        boolean complete = stream.complete();
+        pool.release(wire);
+        wire = null;
+        return keepAlive && complete;
+    }
+
+    boolean headersSent() {
+        return status != -1;
+    }
+
+    void forceClose() {
+        keepAlive = false;
+    }
+
+    private static String reason(int code) {
+        switch (code) {
+            case 100: return "Continue";
+            case 200: return "OK";
+            case 201: return "Created";
+            case 204: return "No Content";
+            case 304: return "Not Modified";
+            case 400: return "Bad Request";
+            case 401: return "Unauthorized";
+            case 403: return "Forbidden";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 413: return "Payload Too Large";
+            case 422: return "Unprocessable Entity";
+            case 431: return "Request Header Fields Too Large";
+            case 500: return "Internal Server Error";
+            case 501: return "Not Implemented";
+            case 503: return "Service Unavailable";
+            default: return "Status";
+        }
+    }
+
+    /*
+     * Body writer over the wire buffer. Fixed-length bodies are checked
+     * against the declared length; chunked bodies are framed per flush of
+     * the wire buffer, so chunks are as large as the buffer allows. The size
+     * line is reserved before the payload and filled in afterwards.
+     */
+    private final class ResponseStream extends OutputStream {
+        private final boolean chunked;
+        private long remaining;
+        private boolean closed;
+        private boolean failed;
+        // Chunked: where the current chunk's payload starts in the wire buffer
+        private int chunkStart = -1;
+
+        ResponseStream(long bodyLength) {
+            this.chunked = bodyLength == 0;
+            this.remaining = bodyLength < 0 ? 0 : bodyLength;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Response body already closed");
+            }
+            if (!chunked) {
+                if (len > remaining) {
+                    failed = true;
+                    throw new IOException("Response body longer than its Content-Length");
+                }
+                remaining -= len;
+                put(b, off, len);
+                return;
+            }
+            while (len > 0) {
+                if (chunkStart < 0) {
+                    // Reserve the size line, filled in when the chunk ends
+                    if (wire.remaining() < SIZE_LINE + CRLF.length + 1) flushWire();
+                    wire.position(wire.position() + SIZE_LINE);
+                    chunkStart = wire.position();
+                }
+                int room = wire.remaining() - CRLF.length;
+                if (room <= 0) {
+                    endChunk();
+                    flushWire();
+                    continue;
+                }
+                int take = Math.min(room, len);
+                wire.put(b, off, take);
+                off += take;
+                len -= take;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (chunked) {
+                endChunk();
+            }
+            flushWire();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                if (chunked) {
+                    endChunk();
+                    put(LAST_CHUNK, 0, LAST_CHUNK.length);
+                }
+                flushWire();
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        boolean complete() {
+            return closed && !failed && remaining == 0;
+        }
+
+        void put(byte[] b) throws IOException {
+            put(b, 0, b.length);
+        }
+
+        private void put(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (!wire.hasRemaining()) flushWire();
+                int take = Math.min(wire.remaining(), len);
+                wire.put(b, off, take);
+                off += take;
+                len -= take;
+            }
+        }
+
+        // Fills in the reserved size line (fixed width, zero padded) and closes the chunk
+        private void endChunk() {
+            if (chunkStart < 0) return;
+            int size = wire.position() - chunkStart;
+            if (size == 0) {
+                // Nothing was written into it; give the reservation back
+                wire.position(chunkStart - SIZE_LINE);
+            } else {
+                String hex = Integer.toHexString(size);
+                byte[] sizeLine = ("00000000".substring(hex.length()) + hex + "\r\n").getBytes(StandardCharsets.US_ASCII);
+                ByteBuffer view = wire.duplicate();
+                view.position(chunkStart - SIZE_LINE);
+                view.put(sizeLine);
+                wire.put(CRLF);
+            }
+            chunkStart = -1;
+        }
+
+        private void flushWire() throws IOException {
+            if (chunkStart >= 0) {
+                endChunk();
+            }
+            wire.flip();
+            try {
+                connection.writeFully(wire);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            } finally {
+                wire.clear();
+            }
+        }
+    }
+
+    @Override public Headers getRequestHeaders() { return request.headers; }
+    @Override public Headers getResponseHeaders() { return responseHeaders; }
+    @Override public URI getRequestURI() { return uri; }
+    @Override public String getRequestMethod() { return request.method; }
+    @Override public HttpContext getHttpContext() { return context; }
+    @Override public InputStream getRequestBody() { return requestBody; }
+    @Override public int getResponseCode() { return status; }
+    @Override public String getProtocol() { return request.protocol; }
+    @Override public Object getAttribute(String name) { return attributes.get(name); }
+    @Override public HttpPrincipal getPrincipal() { return null; }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        if (value == null) {
+            attributes.remove(name);
+        } else {
+            attributes.put(name, value);
+        }
+    }
+
+    @Override
+    public void setStreams(InputStream input, OutputStream output) {
+        if (input != null) requestBody = input;
+        if (output != null) responseBody = output;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        try {
+            return (InetSocketAddress) connection.channel.getRemoteAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        try {
+            return (InetSocketAddress) connection.channel.getLocalAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package server;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import utils.Config;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-blocking HTTP/1.1 engine behind the {@link HttpServer} API, so the
+ * existing handlers run on it unchanged; pick it with -Dhttp.engine=nio.
+ *
+ * One selector thread accepts connections, reads into pooled direct
+ * buffers and parses requests, including pipelined ones. Handlers run on
+ * the executor (a small pool of its own unless one is set), one request
+ * per connection at a time and in order; the worker then writes the
+ * response itself, so a slow client ties up a worker only while its
+ * socket buffer is full. Connections stay open between requests until
+ * the client closes them or they sit idle for http.nio.idleSeconds.
+ *
+ * Settings: http.nio.bufferBytes (16384), http.nio.pooledBuffers (1024),
+ * http.nio.maxBodyBytes (64 MB), http.nio.idleSeconds (30),
+ * http.nio.writeTimeoutSeconds (30). Authenticators are not applied.
+ */
+public class NioHttpServer extends HttpServer {
+    private final BufferPool pool = new BufferPool(
+            Config.getInt("http.nio.bufferBytes", 16 * 1024), Config.getInt("http.nio.pooledBuffers", 1024));
+    private final long maxBodyBytes = Config.getLong("http.nio.maxBodyBytes", 64L * 1024 * 1024);
+    private final long idleNanos = TimeUnit.SECONDS.toNanos(Config.getInt("http.nio.idleSeconds", 30));
+    private final int writeTimeoutSeconds = Config.getInt("http.nio.writeTimeoutSeconds", 30);
+
+    private final List<NioHttpContext> contexts = new CopyOnWriteArrayList<>();
+    private final Set<NioConnection> connections = ConcurrentHashMap.newKeySet();
+    private ServerSocketChannel serverChannel;
+    private Selector selector;
+    private Thread selectorThread;
+    private volatile boolean running;
+    private Executor executor;
+    private ExecutorService ownExecutor;
+
+    private NioHttpServer() {}
+
+    public static NioHttpServer create(InetSocketAddress address, int backlog) throws IOException {
+        NioHttpServer server = new NioHttpServer();
+        if (address != null) {
+            server.bind(address, backlog);
+        }
+        return server;
+    }
+
+    @Override
+    public void bind(InetSocketAddress address, int backlog) throws IOException {
+        if (serverChannel != null) {
+            throw new IllegalStateException("Already bound");
+        }
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(address, backlog);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    @Override
+    public void start() {
+        if (serverChannel == null || running) {
+            throw new IllegalStateException("Not bound, or already started");
+        }
+        if (executor == null) {
+            ownExecutor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+            executor = ownExecutor;
+        }
+        running = true;
+        selectorThread = new Thread(this::run, "nio-http-selector");
+        selectorThread.start();
+    }
+
+    @Override
+    public void setExecutor(Executor executor) {
+        if (running) {
+            throw new IllegalStateException("Server already started");
+        }
+        this.executor = executor;
+    }
+
+    @Override
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public void stop(int delaySeconds) {
+        running = false;
+        selector.wakeup();
+        try {
+            serverChannel.close();
+            // Give in-flight exchanges up to the delay to finish
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(Math.max(0, delaySeconds));
+            while (System.nanoTime() < deadline && connections.stream().anyMatch(c -> !c.isIdleSince(Long.MAX_VALUE))) {
+                Thread.sleep(50);
+            }
+            selectorThread.join(1000);
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("Error stopping NIO server: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        connections.forEach(NioConnection::close);
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+    }
+
+    @Override
+    public HttpContext createContext(String path, HttpHandler handler) {
+        if (path == null || !path.startsWith("/")) {
+            throw new IllegalArgumentException("Context path must start with /");
+        }
+        for (NioHttpContext context : contexts) {
+            if (context.getPath().equals(path)) {
+                throw new IllegalArgumentException("Context already exists: " + path);
+            }
+        }
+        NioHttpContext context = new NioHttpContext(path, handler, this);
+        contexts.add(context);
+        return context;
+    }
+
+    @Override
+    public HttpContext createContext(String path) {
+        return createContext(path, null);
+    }
+
+    @Override
+    public void removeContext(String path) {
+        if (!contexts.removeIf(context -> context.getPath().equals(path))) {
+            throw new IllegalArgumentException("No context for " + path);
+        }
+    }
+
+    @Override
+    public void removeContext(HttpContext context) {
+        contexts.remove(context);
+    }
+
+    @Override
+    public InetSocketAddress getAddress() {
+        try {
+            return (InetSocketAddress) serverChannel.getLocalAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    long maxBodyBytes() {
+        return maxBodyBytes;
+    }
+
+    int writeTimeoutSeconds() {
+        return writeTimeoutSeconds;
+    }
+
+    void wakeup() {
+        selector.wakeup();
+    }
+
+    void closed(NioConnection connection) {
+        connections.remove(connection);
+    }
+
+    void dispatch(NioConnection connection) {
+        try {
+            executor.execute(connection::serve);
+        } catch (RejectedExecutionException e) {
+            connection.close();
+        }
+    }
+
+    // Selector thread: accept, read and parse; everything else happens on workers
+    private void run() {
+        long nextSweep = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (running) {
+            try {
+                selector.select(1000);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable()) {
+                        ((NioConnection) key.attachment()).onReadable(pool);
+                    }
+                }
+                long now = System.nanoTime();
+                if (now >= nextSweep) {
+                    nextSweep = now + TimeUnit.SECONDS.toNanos(1);
+                    for (NioConnection connection : connections) {
+                        if (connection.isIdleSince(now - idleNanos)) {
+                            connection.close();
+                        }
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                if (running) {
+                    System.err.println("NIO selector error: " + e.getMessage());
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            NioConnection connection = new NioConnection(channel, this);
+            connections.add(connection);
+            connection.register(selector);
+        }
+    }
+
+    /**
+     * Runs one request through its context's filters and handler; false
+     * when the connection has to be closed afterwards.
+     */
+    boolean serve(NioConnection connection, NioConnection.Request request) {
+        if (request.errorStatus != 0) {
+            request.method = "GET";
+            request.protocol = "HTTP/1.1";
+            request.uri = "/";
+            request.keepAlive = false;
+            return respond(new NioHttpExchange(connection, request, null, URI.create("/"), pool),
+                    request.errorStatus, request.errorMessage);
+        }
+        URI uri;
+        try {
+            uri = new URI(request.uri);
+        } catch (URISyntaxException e) {
+            request.keepAlive = false;
+            return respond(new NioHttpExchange(connection, request, null, URI.create("/"), pool), 400, "Bad request URI");
+        }
+        NioHttpContext context = findContext(uri.getPath());
+        NioHttpExchange exchange = new NioHttpExchange(connection, request, context, uri, pool);
+        if (context == null || context.getHandler() == null) {
+            return respond(exchange, 404, "No context found for request");
+        }
+        try {
+            new Filter.Chain(context.getFilters(), context.getHandler()).doFilter(exchange);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Handler error for " + request.uri + ": " + e.getMessage());
+            e.printStackTrace();
+            exchange.forceClose();
+            if (!exchange.headersSent()) {
+                return respond(exchange, 500, "Internal server error");
+            }
+        }
+        return exchange.finish();
+    }
+
+    private boolean respond(NioHttpExchange exchange, int status, String message) {
+        try {
+            byte[] body = ("{\"error\": \"" + message + "\"}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            exchange.getResponseBody().write(body);
+        } catch (IOException e) {
+            exchange.forceClose();
+        }
+        return exchange.finish();
+    }
+
+    // Longest registered prefix wins, as with the JDK server
+    private NioHttpContext findContext(String path) {
+        NioHttpContext best = null;
+        if (path == null) {
+            return null;
+        }
+        for (NioHttpContext context : contexts) {
+            String prefix = context.getPath();
+            if (path.startsWith(prefix) && (best == null || prefix.length() > best.getPath().length())) {
+                best = context;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,32 @@
+package server;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Request executors selectable with -Dhttp.executor:
+ * <ul>
+ *   <li>fixed - a pool of http.threads platform threads (the default)</li>
+ *   <li>workstealing - a ForkJoinPool with http.threads parallelism</li>
+ *   <li>virtual - a new virtual thread per request</li>
+ * </ul>
+ */
+public final class ServerExecutors {
+    private ServerExecutors() {}
+
+    public static ExecutorService create(String mode, int threads) {
+        switch (mode.toLowerCase(Locale.ROOT)) {
+            case "fixed":
+                return Executors.newFixedThreadPool(threads);
+            case "workstealing":
+            case "work-stealing":
+                return Executors.newWorkStealingPool(threads);
+            case "virtual":
+                return Executors.newVirtualThreadPerTaskExecutor();
+            default:
+                System.err.println("Unknown http.executor '" + mode + "', using fixed");
+                return Executors.newFixedThreadPool(threads);
+        }
+    }
+}
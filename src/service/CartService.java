@@ -3,11 +3,12 @@ package service;
 import model.Cart;
 import model.CartItem;
 import model.Product;
+import store.DataStore;
 import utils.JsonDataManager;
 
 public class CartService {
     private static CartService instance;
-    private final JsonDataManager dataManager;
+    private final DataStore dataManager;
     private final ProductService productService;
 
     private CartService() {
@@ -53,7 +54,7 @@ public class CartService {
 
     public void removeFromCart(int userId, int productId) {
         Cart cart = getCart(userId);
-        cart.getItems().removeIf(item -> item.getProductId() == productId);
+        cart.removeItem(productId);
         dataManager.saveCart(cart);
     }
 
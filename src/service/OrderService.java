@@ -1,21 +1,24 @@
 package service;
 
-import com.google.gson.reflect.TypeToken;
 import model.*;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import store.DataStore;
 import utils.JsonDataManager;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Collection;
-import java.util.stream.Collectors;
-import java.lang.reflect.Type;
 
 public class OrderService {
     private static OrderService instance;
-    private final JsonDataManager dataManager;
+    private final DataStore dataManager;
     private final CartService cartService;
-    private static final String ORDERS_FILE = "orders.json";
-    private static final Type ORDER_LIST_TYPE = new TypeToken<ArrayList<Order>>(){}.getType();
 
     private OrderService() {
         this.dataManager = JsonDataManager.getInstance();
@@ -50,8 +53,8 @@ public class OrderService {
                 throw new IllegalStateException("No valid items in cart");
             }
 
-            // Create new order
-            Order order = new Order(dataManager.getNextOrderId(), userId);
+            // Create new order; id 0 lets saveOrder assign the next one
+            Order order = new Order(0, userId);
             order.setOrderDate(LocalDateTime.now().toString());
             order.setStatus("PENDING");
 
@@ -92,15 +95,14 @@ public class OrderService {
         return dataManager.getOrder(orderId);
     }
 
+    // orders.json lags the mutation log, so read from the in-memory map
     public Collection<Order> getUserOrders(int userId) {
-        String json = dataManager.readFile(ORDERS_FILE);
-        if (json == null || json.isEmpty()) {
-            return new ArrayList<>();
-        }
-        Collection<Order> allOrders = dataManager.getGson().fromJson(json, ORDER_LIST_TYPE);
-        return allOrders.stream()
-                .filter(order -> order.getUserId() == userId)
-                .collect(Collectors.toList());
+        return dataManager.getUserOrders(userId);
+    }
+
+    // One page of order history, served from the per-user index
+    public List<Order> getUserOrders(int userId, int beforeId, int limit) {
+        return dataManager.getUserOrders(userId, beforeId, limit);
     }
 
     public void updateOrder(Order order) {
@@ -108,8 +110,32 @@ public class OrderService {
         dataManager.saveOrder(order);
     }
 
-    public String getAllOrders() {
-        Collection<Order> orders = dataManager.getAllOrders();
-        return dataManager.getGson().toJson(orders);
+    /**
+     * Orders placed at or after {@code since} (an ISO date or date-time
+     * prefix such as "2024-11" or "2024-11-03T12:00"; null for all), one
+     * compact JSON object per line.
+     */
+    public void exportOrders(String since, OutputStream out) throws IOException {
+        Gson gson = dataManager.getGson();
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        dataManager.forEachOrder(order -> {
+            if (since == null || (order.getOrderDate() != null && order.getOrderDate().compareTo(since) >= 0)) {
+                try {
+                    gson.toJson(order, Order.class, new JsonWriter(writer));
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+        writer.flush();
+    }
+
+    /** Every order as one JSON array, written order by order instead of built in memory. */
+    public void writeAllOrders(JsonWriter writer) throws IOException {
+        Gson gson = dataManager.getGson();
+        writer.beginArray();
+        dataManager.forEachOrder(order -> gson.toJson(order, Order.class, writer));
+        writer.endArray();
     }
 }
\ No newline at end of file
@@ -1,15 +1,34 @@
 package service;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import model.Product;
+import search.SearchRequest;
+import search.SearchResult;
+import store.CatalogSnapshot;
+import store.DataStore;
+import utils.Config;
 import utils.JsonDataManager;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class ProductService {
+    private static final int IMPORT_BATCH = 1000;
+
     private static ProductService instance;
-    private final JsonDataManager dataManager;
+    private final DataStore dataManager;
 
     private ProductService() {
         this.dataManager = JsonDataManager.getInstance();
@@ -26,6 +45,10 @@ public class ProductService {
         return dataManager.getAllProducts();
     }
 
+    public CatalogSnapshot getCatalog() {
+        return dataManager.getCatalog();
+    }
+
     public Product getProduct(int id) {
         return dataManager.getProduct(id);
     }
@@ -34,40 +57,239 @@ public class ProductService {
         dataManager.saveProduct(product);
     }
 
-    public Collection<Product> getProductsByCategory(String category) {
-        return getAllProducts().stream()
-                .filter(p -> p.getCategory().equalsIgnoreCase(category))
-                .toList();
+    // Matching, filtering, ranking and paging all happen in the product index
+    public SearchResult search(SearchRequest request) {
+        return dataManager.getProductIndex().search(request);
     }
 
-    public String getProductsPage(int page, int pageSize) {
-        List<Product> allProducts = new ArrayList<>(dataManager.getAllProducts());
-        int start = (page - 1) * pageSize;
-        int end = Math.min(start + pageSize, allProducts.size());
+    public String suggest(String prefix, int limit) {
+        return dataManager.getGson().toJson(dataManager.getProductIndex().suggest(prefix, limit));
+    }
 
-        if (start >= allProducts.size()) {
-            return "[]";
+    public List<Product> getProducts(int[] ids) {
+        return getProducts(dataManager.getCatalog(), ids);
+    }
+
+    // Resolves ids against one snapshot; ids deleted since the search are skipped
+    public List<Product> getProducts(CatalogSnapshot catalog, int[] ids) {
+        List<Product> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Product product = catalog.get(id);
+            if (product != null) {
+                result.add(product);
+            }
         }
+        return result;
+    }
+
+    public Collection<Product> getProductsByCategory(String category) {
+        SearchRequest request = new SearchRequest();
+        request.setCategory(category);
+        return getProducts(search(request).getIds());
+    }
+
+    public String toJson(Object value) {
+        return dataManager.getGson().toJson(value);
+    }
 
-        List<Product> pagedProducts = allProducts.subList(start, end);
-        return dataManager.getGson().toJson(pagedProducts);
+    // Offset page in id order, sliced from the index's id list rather than a copy of the catalog
+    public String getProductsPage(int page, int pageSize) {
+        SearchRequest request = new SearchRequest();
+        request.setOffset((int) Math.min(Integer.MAX_VALUE, (long) (page - 1) * pageSize));
+        request.setLimit(pageSize);
+        return dataManager.getGson().toJson(getProducts(search(request).getIds()));
     }
 
     public String addProduct(String productJson) {
-        Product product = dataManager.getGson().fromJson(productJson, Product.class);
+        Product product = validate(fromJson(productJson));
         dataManager.saveProduct(product);
         return product.toJson();
     }
 
     public String updateProduct(String productJson) {
-        Product product = dataManager.getGson().fromJson(productJson, Product.class);
+        Product product = fromJson(productJson);
         if (product.getId() == 0) {
             throw new RuntimeException("Product ID is required for update");
         }
+        validate(product);
         dataManager.saveProduct(product);
         return product.toJson();
     }
 
+    /** Every product with an id above {@code sinceId}, one JSON object per line. */
+    public void exportProducts(int sinceId, OutputStream out) throws IOException {
+        for (Product product : getCatalog().getProducts()) {
+            if (product.getId() > sinceId) {
+                out.write(product.toJsonBytes());
+                out.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Reads one product per line and saves them in batches of
+     * import.batchSize (default 1000), so each batch costs one catalog
+     * publish and one log append. Lines that do not parse or fail
+     * validation are skipped and reported by number, so one bad line never
+     * fails the batch it would have joined; blank lines are ignored.
+     */
+    public String importProducts(Reader body) throws IOException {
+        int batchSize = Math.max(1, Config.getInt("import.batchSize", IMPORT_BATCH));
+        BufferedReader reader = new BufferedReader(body);
+        List<Product> batch = new ArrayList<>(batchSize);
+        List<Integer> failedLines = new ArrayList<>();
+        int imported = 0;
+        int failed = 0;
+        int batches = 0;
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) continue;
+            try {
+                batch.add(validate(fromJson(line)));
+            } catch (RuntimeException e) {
+                failed++;
+                if (failedLines.size() < 100) {
+                    failedLines.add(lineNumber);
+                }
+                continue;
+            }
+            if (batch.size() == batchSize) {
+                imported += flushImport(batch);
+                batches++;
+            }
+        }
+        if (!batch.isEmpty()) {
+            imported += flushImport(batch);
+            batches++;
+        }
+        System.out.println("Imported " + imported + " products in " + batches + " batches, " + failed + " failed");
+        return "{\"imported\":" + imported + ",\"batches\":" + batches + ",\"failed\":" + failed
+                + ",\"failedLines\":" + failedLines + "}";
+    }
+
+    private int flushImport(List<Product> batch) {
+        int size = batch.size();
+        dataManager.saveProducts(new ArrayList<>(batch));
+        batch.clear();
+        return size;
+    }
+
+    /*
+     * Parses a product and rebuilds it through the constructor: Gson skips
+     * constructors, which would leave keywords null and the entity version at
+     * the value loaded products have, so its cached JSON and ETag could be
+     * mistaken for those of the product it replaces.
+     */
+    private Product fromJson(String json) {
+        return rebuild(dataManager.getGson().fromJson(json, Product.class));
+    }
+
+    private Product rebuild(Product parsed) {
+        if (parsed == null) {
+            throw new IllegalArgumentException("Empty product");
+        }
+        return new Product(parsed.getId(), parsed.getName(), parsed.getPrice(), parsed.getDescription(),
+                parsed.getStockQuantity(), parsed.getCategory(), parsed.getSubcategory(),
+                parsed.getImageUrl(), parsed.getKeywords());
+    }
+
+    /**
+     * Applies {"operations":[{"op":"upsert","product":{..}}, {"op":"delete","id":N}, ..]}
+     * all or nothing. Every operation is validated first; if any fails,
+     * nothing is applied and the per-item results say why. Otherwise the
+     * whole batch becomes one catalog version and one log append.
+     */
+    public Map<String, Object> applyBatch(String body) {
+        JsonElement root = JsonParser.parseString(body);
+        if (!root.isJsonObject() || !root.getAsJsonObject().has("operations")
+                || !root.getAsJsonObject().get("operations").isJsonArray()) {
+            throw new IllegalArgumentException("Expected {\"operations\": [...]}");
+        }
+        JsonArray operations = root.getAsJsonObject().getAsJsonArray("operations");
+        CatalogSnapshot catalog = getCatalog();
+
+        List<Product> upserts = new ArrayList<>();
+        List<Integer> deletes = new ArrayList<>();
+        List<Map<String, Object>> results = new ArrayList<>(operations.size());
+        Set<Integer> touched = new HashSet<>();
+        boolean valid = true;
+        for (int i = 0; i < operations.size(); i++) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("index", i);
+            try {
+                JsonObject operation = operations.get(i).getAsJsonObject();
+                String op = operation.has("op") ? operation.get("op").getAsString() : "";
+                result.put("op", op);
+                if ("upsert".equals(op)) {
+                    Product product = validate(rebuild(
+                            dataManager.getGson().fromJson(operation.get("product"), Product.class)));
+                    result.put("status", catalog.get(product.getId()) != null ? "updated" : "created");
+                    if (product.getId() != 0) {
+                        result.put("id", product.getId());
+                        claim(touched, product.getId());
+                    }
+                    upserts.add(product);
+                } else if ("delete".equals(op)) {
+                    int id = operation.get("id").getAsInt();
+                    result.put("id", id);
+                    if (catalog.get(id) == null) {
+                        throw new IllegalArgumentException("Product not found");
+                    }
+                    claim(touched, id);
+                    result.put("status", "deleted");
+                    deletes.add(id);
+                } else {
+                    throw new IllegalArgumentException("Unknown op, expected upsert or delete");
+                }
+            } catch (RuntimeException e) {
+                valid = false;
+                result.remove("status");
+                result.put("error", e.getMessage() != null ? e.getMessage() : e.toString());
+            }
+            results.add(result);
+        }
+
+        if (valid) {
+            dataManager.applyProducts(upserts, deletes);
+            // Ids of created products are only known now
+            int next = 0;
+            for (Map<String, Object> result : results) {
+                if ("upsert".equals(result.get("op"))) {
+                    result.put("id", upserts.get(next++).getId());
+                }
+            }
+        } else {
+            // Valid items were not applied either
+            results.forEach(result -> result.computeIfPresent("status", (k, v) -> "skipped"));
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("applied", valid);
+        response.put("upserted", valid ? upserts.size() : 0);
+        response.put("deleted", valid ? deletes.size() : 0);
+        response.put("results", results);
+        return response;
+    }
+
+    // Id 0 means "assign one"; anything else has to fit the catalog
+    private static Product validate(Product product) {
+        if (product.getId() != 0) {
+            Product.requireValidId(product.getId());
+        }
+        if (product.getName() == null || product.getName().isBlank() || product.getPrice() < 0) {
+            throw new IllegalArgumentException("Product needs a name and a non-negative price");
+        }
+        return product;
+    }
+
+    // One operation per id, so the outcome never depends on order within the batch
+    private static void claim(Set<Integer> touched, int id) {
+        if (!touched.add(id)) {
+            throw new IllegalArgumentException("Product " + id + " appears more than once in the batch");
+        }
+    }
+
     public String deleteProduct(int productId) {
         Product product = dataManager.getProduct(productId);
         if (product == null) {
@@ -1,19 +1,24 @@
 package service;
 
+import com.google.gson.stream.JsonWriter;
 import model.User;
+import store.DataStore;
 import utils.JsonDataManager;
-import com.google.gson.reflect.TypeToken;
-import java.lang.reflect.Type;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.List;
 import java.util.stream.Collectors;
 
 public class UserService {
     private static UserService instance;
-    private final JsonDataManager dataManager;
-    private static final String USERS_FILE = "users.json";
-    private static final Type USER_LIST_TYPE = new TypeToken<ArrayList<User>>(){}.getType();
+    private final DataStore dataManager;
+    private final ReentrantLock signUpLock = new ReentrantLock();
 
     private UserService() {
         this.dataManager = JsonDataManager.getInstance();
@@ -26,63 +31,26 @@ public class UserService {
         return instance;
     }
 
+    // users.json is only a snapshot now; the in-memory map also reflects the mutation log
     public Collection<User> getAllUsers() {
-        String json = dataManager.readFile(USERS_FILE);
-        if (json == null || json.isEmpty()) {
-            return new ArrayList<>();
-        }
-        return dataManager.getGson().fromJson(json, USER_LIST_TYPE);
+        return dataManager.getAllUsers();
     }
 
     public User getUser(int id) {
-        return getAllUsers().stream()
-                .filter(user -> user.getId() == id)
-                .findFirst()
-                .orElse(null);
+        return dataManager.getUser(id);
     }
 
+    // Served from the email index; matching ignores case and surrounding spaces
     public User getUserByEmail(String email) {
-        String json = dataManager.readFile(USERS_FILE);
-        if (json == null || json.isEmpty()) {
-            return null;
-        }
-        Collection<User> users = dataManager.getGson().fromJson(json, USER_LIST_TYPE);
-
-        return users.stream()
-                .filter(user -> email.equals(user.getEmail()))
-                .findFirst()
-                .orElse(null);
+        return dataManager.getUserByEmail(email);
     }
 
     public void saveUser(User user) {
-        Collection<User> users = getAllUsers();
-        List<User> userList = new ArrayList<>(users);
-
-        // Update existing user or add new one
-        boolean found = false;
-        for (int i = 0; i < userList.size(); i++) {
-            if (userList.get(i).getId() == user.getId()) {
-                userList.set(i, user);
-                found = true;
-                break;
-            }
-        }
-
-        if (!found) {
-            userList.add(user);
-        }
-
-        String json = dataManager.getGson().toJson(userList);
-        dataManager.writeFile(USERS_FILE, json);
+        dataManager.saveUser(user);
     }
 
     public void deleteUser(int id) {
-        Collection<User> users = getAllUsers();
-        List<User> updatedUsers = users.stream()
-                .filter(user -> user.getId() != id)
-                .collect(Collectors.toList());
-        String json = dataManager.getGson().toJson(updatedUsers);
-        dataManager.writeFile(USERS_FILE, json);
+        dataManager.deleteUser(id);
     }
 
     public String getAllUsersWithRole(String role) {
@@ -93,6 +61,28 @@ public class UserService {
         return dataManager.getGson().toJson(filteredUsers);
     }
 
+    /**
+     * Users with an id above {@code sinceId} in id order, one JSON object per
+     * line. Passwords stay out of exports.
+     */
+    public void exportUsers(int sinceId, OutputStream out) throws IOException {
+        List<User> selected = dataManager.getAllUsers().stream()
+                .filter(user -> user.getId() > sinceId)
+                .sorted(Comparator.comparingInt(User::getId))
+                .collect(Collectors.toList());
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        for (User user : selected) {
+            JsonWriter json = new JsonWriter(writer);
+            json.beginObject();
+            json.name("id").value(user.getId());
+            json.name("email").value(user.getEmail());
+            json.name("role").value(user.getRole());
+            json.endObject();
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
     public boolean authenticateUser(String email, String password) {
         User user = getUserByEmail(email);
         return user != null && user.getPassword().equals(password);
@@ -105,9 +95,6 @@ public class UserService {
 
     public User signIn(String email, String password) {
         try {
-            Collection<User> users = getAllUsers();
-            System.out.println("All users: " + dataManager.getGson().toJson(users));
-
             User user = getUserByEmail(email);
             if (user == null) {
                 System.out.println("Sign-in failed: User not found - " + email);
@@ -131,29 +118,34 @@ public class UserService {
         }
     }
 
+    // Locked so two sign-ups with the same email cannot both pass the check. A lock
+    // rather than synchronized, since saveUser may wait on a group commit.
     public User createAccount(String email, String password, String role) {
-        // Check if email already exists
-        if (dataManager.getUsers().values().stream()
-                .anyMatch(user -> user.getEmail().equals(email))) {
-            throw new RuntimeException("Email already exists");
-        }
+        signUpLock.lock();
+        try {
+            // Check if email already exists
+            if (getUserByEmail(email) != null) {
+                throw new RuntimeException("Email already exists");
+            }
 
-        int newId = generateNewUserId();
-        User newUser = new User(newId, email, password, role);
-        dataManager.saveUser(newUser);
-        return newUser;
+            // saveUser assigns the next id
+            User newUser = new User(0, email, password, role);
+            dataManager.saveUser(newUser);
+            return newUser;
+        } finally {
+            signUpLock.unlock();
+        }
     }
 
     public void initiatePasswordReset(String email) {
-        User user = dataManager.getUsers().values().stream()
-                .filter(u -> u.getEmail().equals(email))
-                .findFirst()
-                .orElseThrow(() -> new RuntimeException("Email not found"));
+        if (getUserByEmail(email) == null) {
+            throw new RuntimeException("Email not found");
+        }
         System.out.println("Password reset link sent to: " + email);
     }
 
     public void changePassword(int userId, String newPassword) {
-        User user = dataManager.getUsers().get(userId);
+        User user = dataManager.getUser(userId);
         if (user == null) {
             throw new RuntimeException("User not found");
         }
@@ -171,11 +163,4 @@ public class UserService {
         saveUser(user);
         return true;
     }
-
-    private int generateNewUserId() {
-        return dataManager.getUsers().values().stream()
-                .mapToInt(User::getId)
-                .max()
-                .orElse(0) + 1;
-    }
 }
\ No newline at end of file
@@ -0,0 +1,341 @@
+package store;
+
+import com.google.gson.Gson;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary snapshots plus a length-prefixed log.
+ * <pre>
+ * snapshot  &lt;collection&gt;.bin     : MAGIC, count, record*, dictionary, dictionaryOffset, crc32
+ * log       &lt;collection&gt;.binlog  : { op, id, length, payload }*
+ * </pre>
+ * Snapshot records are encoded field by field by {@link SnapshotCodec},
+ * with strings stored once in the trailing dictionary. Loading maps the
+ * file, verifies the checksum and decodes without any JSON parsing.
+ * Log payloads stay compact JSON since the log only lives until the next
+ * checkpoint.
+ */
+public class BinaryStorageEngine implements StorageEngine {
+    private static final int MAGIC = 0x54545332; // "TTS2"
+    private static final int MAGIC_V1 = 0x54545331; // "TTS1", JSON payloads
+    private static final byte OP_UPSERT = 1;
+    private static final byte OP_DELETE = 2;
+
+    private final Path dataDir;
+    private final Gson gson;
+    private final Map<String, BinaryLog> logs = new ConcurrentHashMap<>();
+
+    public BinaryStorageEngine(Path dataDir, Gson gson) {
+        this.dataDir = dataDir;
+        this.gson = gson;
+    }
+
+    @Override
+    public String getName() {
+        return "binary";
+    }
+
+    private BinaryLog log(String collection) {
+        return logs.computeIfAbsent(collection, c -> new BinaryLog(dataDir.resolve(c + ".binlog")));
+    }
+
+    private byte[] encode(Object entity) {
+        return gson.toJsonTree(entity).toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private <T> T decode(byte[] payload, Class<T> type) {
+        return gson.fromJson(new String(payload, StandardCharsets.UTF_8), type);
+    }
+
+    @Override
+    public <T> void load(String collection, Class<T> type, Map<Integer, T> target) throws IOException {
+        Files.createDirectories(dataDir);
+        target.clear();
+
+        Path snapshot = dataDir.resolve(collection + ".bin");
+        if (!Files.exists(snapshot) && Files.exists(dataDir.resolve(collection + ".json"))) {
+            // First start after switching from the json engine: import its data once
+            System.out.println("Importing " + collection + ".json into binary snapshot");
+            new JsonStorageEngine(dataDir, gson).load(collection, type, target);
+            checkpoint(collection, target.values());
+            return;
+        }
+        if (Files.exists(snapshot)) {
+            readSnapshot(snapshot, type, target);
+        }
+
+        int applied = log(collection).replay((op, id, payload) -> {
+            if (op == OP_DELETE) {
+                target.remove(id);
+            } else {
+                target.put(id, decode(payload, type));
+            }
+        });
+        if (applied > 0) {
+            System.out.println("Replayed " + applied + " records from " + collection + ".binlog");
+        }
+    }
+
+    @Override
+    public long append(String collection, List<Mutation> batch, boolean force) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Mutation mutation : batch) {
+            if (mutation.getOp() == Mutation.Op.DELETE) {
+                out.writeByte(OP_DELETE);
+                out.writeInt(mutation.getId());
+                out.writeInt(0);
+            } else {
+                byte[] payload = encode(mutation.getEntity());
+                out.writeByte(OP_UPSERT);
+                out.writeInt(mutation.getId());
+                out.writeInt(payload.length);
+                out.write(payload);
+            }
+        }
+        log(collection).append(bytes.toByteArray(), batch.size(), force);
+        return bytes.size();
+    }
+
+    @Override
+    public Set<String> collections() throws IOException {
+        Set<String> names = new TreeSet<>();
+        if (!Files.isDirectory(dataDir)) {
+            return names;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dataDir, "*.{bin,binlog,json}")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                names.add(name.substring(0, name.lastIndexOf('.')));
+            }
+        }
+        return names;
+    }
+
+    @Override
+    public int pendingRecords(String collection) {
+        return log(collection).size();
+    }
+
+    @Override
+    public long checkpoint(String collection, Collection<?> entities) throws IOException {
+        BinaryLog log = log(collection);
+        log.lock.lock();
+        try {
+            Files.createDirectories(dataDir);
+            Path snapshot = dataDir.resolve(collection + ".bin");
+            Path tmp = dataDir.resolve(collection + ".bin.tmp");
+            writeSnapshot(tmp, new ArrayList<>(entities));
+            Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.truncate();
+            return Files.size(snapshot);
+        } finally {
+            log.lock.unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> void writeSnapshot(Path path, List<?> entities) throws IOException {
+        SnapshotCodec.Codec<T> codec = entities.isEmpty()
+                ? null : SnapshotCodec.forType((Class<T>) entities.get(0).getClass());
+        SnapshotCodec.StringTable table = new SnapshotCodec.StringTable();
+
+        BufferedOutputStream file = new BufferedOutputStream(Files.newOutputStream(path), 1 << 16);
+        CheckedOutputStream checked = new CheckedOutputStream(file, new CRC32());
+        try (DataOutputStream out = new DataOutputStream(checked)) {
+            out.writeInt(MAGIC);
+            out.writeInt(entities.size());
+            for (Object entity : entities) {
+                codec.write((T) entity, out, table);
+            }
+
+            long dictionaryOffset = out.size();
+            List<String> strings = table.getStrings();
+            out.writeInt(strings.size());
+            for (String value : strings) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                SnapshotCodec.writeVarInt(out, bytes.length);
+                out.write(bytes);
+            }
+            out.writeLong(dictionaryOffset);
+            out.flush();
+
+            // Written past the checksummed stream so it is not part of its own checksum
+            new DataOutputStream(file).writeLong(checked.getChecksum().getValue());
+        }
+    }
+
+    private <T> void readSnapshot(Path file, Class<T> type, Map<Integer, T> target) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot too large to map: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            int magic = buffer.getInt(0);
+            if (magic == MAGIC_V1) {
+                readLegacySnapshot(buffer, type, target);
+                return;
+            }
+            if (magic != MAGIC || size < 24) {
+                throw new IOException("Not a snapshot file: " + file);
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate().limit((int) size - 8));
+            if (crc.getValue() != buffer.getLong((int) size - 8)) {
+                throw new IOException("Checksum mismatch in " + file);
+            }
+
+            int dictionaryOffset = (int) buffer.getLong((int) size - 16);
+            ByteBuffer dictionary = buffer.duplicate().position(dictionaryOffset);
+            String[] strings = new String[dictionary.getInt()];
+            byte[] scratch = new byte[256];
+            for (int i = 0; i < strings.length; i++) {
+                int length = SnapshotCodec.readVarInt(dictionary);
+                if (length > scratch.length) {
+                    scratch = new byte[Math.max(length, scratch.length * 2)];
+                }
+                dictionary.get(scratch, 0, length);
+                strings[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+            }
+
+            SnapshotCodec.Codec<T> codec = SnapshotCodec.forType(type);
+            ByteBuffer records = buffer.duplicate().position(4);
+            int count = records.getInt();
+            for (int i = 0; i < count; i++) {
+                T entity = codec.read(records, strings);
+                target.put(EntityIds.of(entity), entity);
+            }
+        }
+    }
+
+    // Snapshots written before the field codecs: id, length, compact JSON
+    private <T> void readLegacySnapshot(ByteBuffer buffer, Class<T> type, Map<Integer, T> target) {
+        ByteBuffer in = buffer.duplicate().position(4);
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            int id = in.getInt();
+            byte[] payload = new byte[in.getInt()];
+            in.get(payload);
+            target.put(id, decode(payload, type));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (BinaryLog log : logs.values()) {
+            log.close();
+        }
+    }
+
+    private interface RecordHandler {
+        void apply(byte op, int id, byte[] payload);
+    }
+
+    private static final class BinaryLog {
+        private final Path path;
+        private FileOutputStream out;
+        private int records;
+        // Not synchronized: appends block on fsync, which would pin a virtual thread's carrier
+        private final ReentrantLock lock = new ReentrantLock();
+
+        BinaryLog(Path path) {
+            this.path = path;
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return records;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void append(byte[] frames, int count, boolean force) throws IOException {
+            lock.lock();
+            try {
+                if (out == null) {
+                    out = new FileOutputStream(path.toFile(), true);
+                }
+                out.write(frames);
+                if (force) {
+                    out.getChannel().force(false);
+                }
+                records += count;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Stops at the first torn frame left behind by a crash mid-append
+        int replay(RecordHandler handler) throws IOException {
+            lock.lock();
+            try {
+                if (!Files.exists(path)) {
+                    return 0;
+                }
+                int applied = 0;
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                    while (true) {
+                        byte op;
+                        try {
+                            op = in.readByte();
+                        } catch (EOFException e) {
+                            break;
+                        }
+                        try {
+                            int id = in.readInt();
+                            byte[] payload = new byte[in.readInt()];
+                            in.readFully(payload);
+                            handler.apply(op, id, payload);
+                            applied++;
+                        } catch (EOFException e) {
+                            System.err.println("Skipping torn record at end of " + path);
+                            break;
+                        }
+                    }
+                }
+                records = applied;
+                return applied;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void truncate() throws IOException {
+            lock.lock();
+            try {
+                close();
+                Files.write(path, new byte[0]);
+                records = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void close() throws IOException {
+            lock.lock();
+            try {
+                if (out != null) {
+                    out.close();
+                    out = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package store;
+
+import java.util.concurrent.CompletableFuture;
+import model.Cart;
+
+public interface CartRepository {
+    // Creates an empty cart on first access
+    Cart getCart(int userId);
+
+    CompletableFuture<Void> saveCart(Cart cart);
+}
@@ -0,0 +1,182 @@
+package store;
+
+import model.Product;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable view of the product catalog at one version: the products in
+ * id order plus an id-indexed array for lookups. A mutation copies the
+ * arrays into a new snapshot, which is then published with a single
+ * volatile write, so readers share snapshots without locks or copies.
+ */
+public final class CatalogSnapshot {
+    private final long version;
+    // Ascending id, no gaps
+    private final Product[] sorted;
+    // Indexed by id; ids are handed out sequentially and capped at Product.MAX_ID, so this stays dense
+    private final Product[] byId;
+    private final List<Product> view;
+
+    private CatalogSnapshot(long version, Product[] sorted, Product[] byId) {
+        this.version = version;
+        this.sorted = sorted;
+        this.byId = byId;
+        this.view = Collections.unmodifiableList(Arrays.asList(sorted));
+    }
+
+    public static CatalogSnapshot empty() {
+        return new CatalogSnapshot(0, new Product[0], new Product[0]);
+    }
+
+    /**
+     * A snapshot of {@code products}, one version after this one. Products
+     * whose id is out of range are reported and left out rather than
+     * failing the whole load.
+     */
+    public CatalogSnapshot replaceAll(Collection<Product> products) {
+        Product[] sorted = products.stream()
+                .filter(product -> {
+                    if (Product.isValidId(product.getId())) return true;
+                    System.err.println("Skipping product with invalid id " + product.getId());
+                    return false;
+                })
+                .sorted(Comparator.comparingInt(Product::getId))
+                .toArray(Product[]::new);
+        int maxId = sorted.length == 0 ? 0 : sorted[sorted.length - 1].getId();
+        Product[] byId = new Product[maxId + 1];
+        for (Product product : sorted) {
+            byId[product.getId()] = product;
+        }
+        return new CatalogSnapshot(version + 1, sorted, byId);
+    }
+
+    /**
+     * This snapshot with {@code product} added or replaced, one version
+     * later; an id outside [1, Product.MAX_ID] is rejected.
+     */
+    public CatalogSnapshot with(Product product) {
+        int id = Product.requireValidId(product.getId());
+        Product[] nextById = Arrays.copyOf(byId, Math.max(byId.length, id + 1));
+        nextById[id] = product;
+
+        int at = indexOf(id);
+        Product[] nextSorted;
+        if (at >= 0) {
+            nextSorted = sorted.clone();
+            nextSorted[at] = product;
+        } else {
+            int insert = -at - 1;
+            nextSorted = new Product[sorted.length + 1];
+            System.arraycopy(sorted, 0, nextSorted, 0, insert);
+            nextSorted[insert] = product;
+            System.arraycopy(sorted, insert, nextSorted, insert + 1, sorted.length - insert);
+        }
+        return new CatalogSnapshot(version + 1, nextSorted, nextById);
+    }
+
+    /**
+     * This snapshot with {@code upserts} applied and {@code deletes} removed,
+     * one version later; a single merge pass rather than one copy per product.
+     */
+    public CatalogSnapshot withChanges(Collection<Product> upserts, Collection<Integer> deletes) {
+        Product[] incoming = upserts.toArray(new Product[0]);
+        Arrays.sort(incoming, Comparator.comparingInt(Product::getId));
+        int maxId = byId.length - 1;
+        for (Product product : incoming) {
+            maxId = Math.max(maxId, Product.requireValidId(product.getId()));
+        }
+        Product[] nextById = Arrays.copyOf(byId, maxId + 1);
+        for (Product product : incoming) {
+            nextById[product.getId()] = product;
+        }
+
+        // Merge two id-ordered runs; the batch wins ties, and within it the last one does
+        Product[] merged = new Product[sorted.length + incoming.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < sorted.length || j < incoming.length) {
+            int next = j == incoming.length ? Integer.MAX_VALUE : incoming[j].getId();
+            if (i < sorted.length && sorted[i].getId() < next) {
+                merged[n++] = sorted[i++];
+            } else {
+                if (i < sorted.length && sorted[i].getId() == next) {
+                    i++;
+                }
+                if (n > 0 && merged[n - 1].getId() == next) {
+                    n--;
+                }
+                merged[n++] = nextById[next];
+                j++;
+            }
+        }
+        if (!deletes.isEmpty()) {
+            for (int id : deletes) {
+                if (id >= 0 && id < nextById.length) {
+                    nextById[id] = null;
+                }
+            }
+            int kept = 0;
+            for (int k = 0; k < n; k++) {
+                if (nextById[merged[k].getId()] != null) {
+                    merged[kept++] = merged[k];
+                }
+            }
+            n = kept;
+        }
+        return new CatalogSnapshot(version + 1, Arrays.copyOf(merged, n), nextById);
+    }
+
+    /** This snapshot without product {@code id}, one version later. */
+    public CatalogSnapshot without(int id) {
+        int at = indexOf(id);
+        if (at < 0) {
+            return this;
+        }
+        Product[] nextSorted = new Product[sorted.length - 1];
+        System.arraycopy(sorted, 0, nextSorted, 0, at);
+        System.arraycopy(sorted, at + 1, nextSorted, at, sorted.length - at - 1);
+        Product[] nextById = byId.clone();
+        nextById[id] = null;
+        return new CatalogSnapshot(version + 1, nextSorted, nextById);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Product get(int id) {
+        return id >= 0 && id < byId.length ? byId[id] : null;
+    }
+
+    /** All products in id order; a read-only view, not a copy. */
+    public List<Product> getProducts() {
+        return view;
+    }
+
+    public int size() {
+        return sorted.length;
+    }
+
+    // Binary search by id; (-(insertion point) - 1) when absent
+    private int indexOf(int id) {
+        int lo = 0;
+        int hi = sorted.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int midId = sorted[mid].getId();
+            if (midId < id) {
+                lo = mid + 1;
+            } else if (midId > id) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+}
@@ -0,0 +1,30 @@
+package store;
+
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Typed access to products, users, carts and orders. Services depend on
+ * this rather than on a concrete store, and the {@link StorageEngine}
+ * underneath decides how (and whether) mutations reach disk.
+ */
+public interface DataStore extends ProductRepository, UserRepository, CartRepository, OrderRepository {
+    Gson getGson();
+
+    String getEngineName();
+
+    String getPersistenceStatsJson();
+
+    // Order partition residency and index sizes
+    String getOrderStatsJson();
+
+    // Record counts and load times per collection from startup
+    String getLoadStatsJson();
+
+    // Writes all collections as JSON arrays, regardless of the active engine
+    void exportJson(Path directory) throws IOException;
+
+    // Flushes pending writes and releases engine resources
+    void close();
+}
@@ -0,0 +1,18 @@
+package store;
+
+import model.*;
+
+/**
+ * Key each collection is stored under; carts are keyed by their owner.
+ */
+final class EntityIds {
+    private EntityIds() {}
+
+    static int of(Object entity) {
+        if (entity instanceof Product) return ((Product) entity).getId();
+        if (entity instanceof User) return ((User) entity).getId();
+        if (entity instanceof Cart) return ((Cart) entity).getUserId();
+        if (entity instanceof Order) return ((Order) entity).getId();
+        throw new IllegalArgumentException("Unsupported entity type: " + entity.getClass().getName());
+    }
+}
@@ -0,0 +1,96 @@
+package store;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints, used for compact id indexes.
+ * Not thread-safe; callers guard it with their own lock.
+ */
+public final class IntList {
+    private int[] values;
+    private int size;
+
+    public IntList() {
+        this(4);
+    }
+
+    public IntList(int capacity) {
+        values = new int[Math.max(1, capacity)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return values[index];
+    }
+
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    /** Inserts into a list kept in ascending order; appending the largest value is O(1). */
+    public void addSorted(int value) {
+        if (size == 0 || values[size - 1] < value) {
+            add(value);
+            return;
+        }
+        insert(lowerBound(value), value);
+    }
+
+    public void insert(int index, int value) {
+        if (index > size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        System.arraycopy(values, index, values, index + 1, size - index);
+        values[index] = value;
+        size++;
+    }
+
+    public void removeAt(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+    }
+
+    /** Index of the first element not less than {@code value}, for lists in ascending order. */
+    public int lowerBound(int value) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Removes {@code value} from a list kept in ascending order. */
+    public boolean removeSorted(int value) {
+        int at = lowerBound(value);
+        if (at == size || values[at] != value) {
+            return false;
+        }
+        removeAt(at);
+        return true;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
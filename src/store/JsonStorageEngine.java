@@ -0,0 +1,151 @@
+package store;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pretty-printed {@code <collection>.json} snapshots plus a
+ * {@code <collection>.log} of compact JSON lines. Slowest engine, but
+ * every file on disk can be read and edited by hand.
+ */
+public class JsonStorageEngine implements StorageEngine {
+    private final Path dataDir;
+    private final Gson gson;
+    private final Map<String, MutationLog> logs = new ConcurrentHashMap<>();
+
+    public JsonStorageEngine(Path dataDir, Gson gson) {
+        this.dataDir = dataDir;
+        this.gson = gson;
+    }
+
+    @Override
+    public String getName() {
+        return "json";
+    }
+
+    private MutationLog log(String collection) {
+        return logs.computeIfAbsent(collection, c -> new MutationLog(dataDir.resolve(c + ".log")));
+    }
+
+    @Override
+    public <T> void load(String collection, Class<T> type, Map<Integer, T> target) throws IOException {
+        Files.createDirectories(dataDir);
+        target.clear();
+        loadData(collection + ".json", type, target);
+
+        MutationLog log = log(collection);
+        int applied = log.replay((op, id, data) -> {
+            if (op == Mutation.Op.DELETE) {
+                target.remove(id);
+            } else {
+                target.put(id, gson.fromJson(data, type));
+            }
+        });
+        if (applied > 0) {
+            System.out.println("Replayed " + applied + " records from " + log.getPath());
+        }
+    }
+
+    // Streams the array element by element so the file is never held in memory as a whole
+    private <T> void loadData(String filename, Class<T> type, Map<Integer, T> target) throws IOException {
+        Path filePath = dataDir.resolve(filename);
+        System.out.println("Loading data from: " + filePath);
+
+        if (!Files.exists(filePath)) {
+            System.out.println("File does not exist: " + filePath);
+            saveData(filename, new ArrayList<>());
+            return;
+        }
+
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(filePath, StandardCharsets.UTF_8))) {
+            try {
+                reader.peek();
+            } catch (EOFException e) {
+                System.out.println("File is empty: " + filePath);
+                return;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                T entity = gson.fromJson(reader, type);
+                if (entity != null) {
+                    target.put(EntityIds.of(entity), entity);
+                }
+            }
+            reader.endArray();
+        }
+    }
+
+    // Writes the snapshot to a temp file and moves it into place so a crash never leaves a half-written file
+    private void saveData(String filename, Collection<?> data) throws IOException {
+        Files.createDirectories(dataDir);
+        Path filePath = dataDir.resolve(filename);
+        Path tmpPath = dataDir.resolve(filename + ".tmp");
+        System.out.println("Saving data to: " + filePath);
+
+        try (Writer writer = Files.newBufferedWriter(tmpPath, StandardCharsets.UTF_8)) {
+            gson.toJson(data, writer);
+        }
+        Files.move(tmpPath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        System.out.println("Successfully saved data to " + filename);
+    }
+
+    @Override
+    public long append(String collection, List<Mutation> batch, boolean force) throws IOException {
+        List<JsonObject> records = new ArrayList<>(batch.size());
+        for (Mutation mutation : batch) {
+            records.add(mutation.getOp() == Mutation.Op.DELETE
+                    ? MutationLog.deleteRecord(mutation.getId())
+                    : MutationLog.upsertRecord(mutation.getId(), gson.toJsonTree(mutation.getEntity())));
+        }
+        return log(collection).append(records, force);
+    }
+
+    @Override
+    public Set<String> collections() throws IOException {
+        Set<String> names = new TreeSet<>();
+        if (!Files.isDirectory(dataDir)) {
+            return names;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dataDir, "*.{json,log}")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                names.add(name.substring(0, name.lastIndexOf('.')));
+            }
+        }
+        return names;
+    }
+
+    @Override
+    public int pendingRecords(String collection) {
+        return log(collection).size();
+    }
+
+    @Override
+    public long checkpoint(String collection, Collection<?> entities) throws IOException {
+        MutationLog log = log(collection);
+        log.lock();
+        try {
+            saveData(collection + ".json", new ArrayList<>(entities));
+            log.truncate();
+            return Files.size(dataDir.resolve(collection + ".json"));
+        } finally {
+            log.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (MutationLog log : logs.values()) {
+            log.close();
+        }
+    }
+}
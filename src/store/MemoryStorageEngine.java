@@ -0,0 +1,51 @@
+package store;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps nothing on disk. Every collection starts empty and writes are
+ * dropped, which isolates in-memory cost when benchmarking the other engines.
+ */
+public class MemoryStorageEngine implements StorageEngine {
+    @Override
+    public String getName() {
+        return "memory";
+    }
+
+    @Override
+    public <T> void load(String collection, Class<T> type, Map<Integer, T> target) {
+        target.clear();
+    }
+
+    @Override
+    public long append(String collection, List<Mutation> batch, boolean force) {
+        return 0;
+    }
+
+    @Override
+    public Set<String> collections() {
+        return Set.of();
+    }
+
+    @Override
+    public int pendingRecords(String collection) {
+        return 0;
+    }
+
+    @Override
+    public long checkpoint(String collection, Collection<?> entities) {
+        return 0;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public boolean isDurable() {
+        return false;
+    }
+}
@@ -0,0 +1,30 @@
+package store;
+
+/**
+ * One upsert or delete of an entity, as handed to a {@link StorageEngine}.
+ */
+public final class Mutation {
+    public enum Op { UPSERT, DELETE }
+
+    private final Op op;
+    private final int id;
+    private final Object entity;
+
+    private Mutation(Op op, int id, Object entity) {
+        this.op = op;
+        this.id = id;
+        this.entity = entity;
+    }
+
+    public static Mutation upsert(int id, Object entity) {
+        return new Mutation(Op.UPSERT, id, entity);
+    }
+
+    public static Mutation delete(int id) {
+        return new Mutation(Op.DELETE, id, null);
+    }
+
+    public Op getOp() { return op; }
+    public int getId() { return id; }
+    public Object getEntity() { return entity; }
+}
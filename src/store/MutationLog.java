@@ -0,0 +1,162 @@
+package store;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only log of upsert/delete records for one collection.
+ * Each record is a single line of compact JSON, so a write costs only
+ * the bytes of the changed entity. The log is replayed over the last
+ * snapshot on startup and truncated after each checkpoint.
+ *
+ * Guarded by a ReentrantLock rather than synchronized: appends block on
+ * fsync, and a virtual thread blocking inside a monitor pins its carrier.
+ */
+public class MutationLog {
+    public interface RecordHandler {
+        void apply(Mutation.Op op, int id, JsonElement data);
+    }
+
+    private final Path path;
+    private FileOutputStream out;
+    private BufferedOutputStream writer;
+    private int records;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public MutationLog(Path path) {
+        this.path = path;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /** Holds off appends while a checkpoint rewrites the snapshot; pair with {@link #unlock}. */
+    public void lock() {
+        lock.lock();
+    }
+
+    public void unlock() {
+        lock.unlock();
+    }
+
+    // Number of records appended since the last checkpoint
+    public int size() {
+        lock.lock();
+        try {
+            return records;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public static JsonObject upsertRecord(int id, JsonElement data) {
+        JsonObject record = new JsonObject();
+        record.addProperty("op", "upsert");
+        record.addProperty("id", id);
+        record.add("data", data);
+        return record;
+    }
+
+    public static JsonObject deleteRecord(int id) {
+        JsonObject record = new JsonObject();
+        record.addProperty("op", "delete");
+        record.addProperty("id", id);
+        return record;
+    }
+
+    /**
+     * Appends the records with a single flush, and a single fsync when
+     * {@code force} is set, so a whole batch shares one disk round trip.
+     * Returns the number of bytes appended.
+     */
+    public long append(List<JsonObject> batch, boolean force) throws IOException {
+        lock.lock();
+        try {
+            if (writer == null) {
+                out = new FileOutputStream(path.toFile(), true);
+                writer = new BufferedOutputStream(out);
+            }
+            long bytes = 0;
+            for (JsonObject record : batch) {
+                byte[] line = (record.toString() + "\n").getBytes(StandardCharsets.UTF_8);
+                writer.write(line);
+                bytes += line.length;
+            }
+            writer.flush();
+            if (force) {
+                out.getChannel().force(false);
+            }
+            records += batch.size();
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replays every record in order. A torn last line (crash mid-append)
+     * is skipped rather than failing the whole load.
+     */
+    public int replay(RecordHandler handler) throws IOException {
+        lock.lock();
+        try {
+            if (!Files.exists(path)) {
+                return 0;
+            }
+
+            int applied = 0;
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) continue;
+                    try {
+                        JsonObject record = JsonParser.parseString(line).getAsJsonObject();
+                        Mutation.Op op = "delete".equals(record.get("op").getAsString())
+                                ? Mutation.Op.DELETE : Mutation.Op.UPSERT;
+                        handler.apply(op, record.get("id").getAsInt(), record.get("data"));
+                        applied++;
+                    } catch (JsonSyntaxException | IllegalStateException | NullPointerException e) {
+                        System.err.println("Skipping corrupt record in " + path + ": " + e.getMessage());
+                    }
+                }
+            }
+            records = applied;
+            return applied;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called once the snapshot holds everything the log contained
+    public void truncate() throws IOException {
+        lock.lock();
+        try {
+            close();
+            Files.write(path, new byte[0]);
+            records = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+                out = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,486 @@
+package store;
+
+import model.Order;
+import java.lang.ref.SoftReference;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Orders split into one collection per month of {@code orderDate}
+ * ({@code orders-2025-01}, ...). The current month and any partition with
+ * writes since its last checkpoint stay resident; other partitions are
+ * kept in a small LRU and otherwise only softly referenced, so the GC can
+ * drop them under memory pressure and they are reloaded on demand.
+ *
+ * Lookups by order id or user id go through compact in-memory indexes,
+ * which are built once at startup and never require a cold partition.
+ * Each user's order ids are kept sorted, so history pages are read
+ * newest first without touching anyone else's orders.
+ *
+ * Reads of resident partitions only take the read lock. A cold partition
+ * is loaded without holding the lock, once per key however many readers
+ * ask for it, and installed under the write lock afterwards.
+ */
+public class OrderPartitions {
+    public static final String PREFIX = "orders-";
+    private static final String UNDATED = "undated";
+
+    private final Function<String, Map<Integer, Order>> loader;
+    private final int maxResident;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Partition ordinal <-> month key
+    private final List<String> keys = new ArrayList<>();
+    private final Map<String, Integer> ordinals = new HashMap<>();
+
+    // orderId -> partition ordinal + 1 (0 = unknown); order ids are dense so an array is cheapest
+    private int[] partitionOf = new int[1024];
+    // userId -> order ids in ascending order; ids are handed out in creation order
+    private final Map<Integer, IntList> ordersByUser = new HashMap<>();
+    private int size;
+    private int maxId;
+
+    private final Map<String, Map<Integer, Order>> resident = new HashMap<>();
+    private final Map<String, SoftReference<Map<Integer, Order>>> cold = new HashMap<>();
+    // Last use per partition for LRU eviction; written by readers, so concurrent
+    private final Map<String, Long> lastUsed = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    // Pinned partition -> stamp of its latest write, so a checkpoint can tell if it missed one
+    private final Map<String, Long> pinned = new HashMap<>();
+    private long writes;
+    private final Map<String, CompletableFuture<Map<Integer, Order>>> loading = new ConcurrentHashMap<>();
+
+    private final AtomicLong coldLoads = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param loader      reads a partition collection (snapshot + log) from the storage engine
+     * @param maxResident partitions kept strongly reachable besides pinned ones
+     */
+    public OrderPartitions(Function<String, Map<Integer, Order>> loader, int maxResident) {
+        this.loader = loader;
+        this.maxResident = Math.max(1, maxResident);
+    }
+
+    public static String keyOf(Order order) {
+        String date = order.getOrderDate();
+        if (date != null && date.length() >= 7 && date.charAt(4) == '-'
+                && Character.isDigit(date.charAt(0)) && Character.isDigit(date.charAt(6))) {
+            return date.substring(0, 7);
+        }
+        return UNDATED;
+    }
+
+    public static String collectionOf(String key) {
+        return PREFIX + key;
+    }
+
+    private static boolean isActive(String key) {
+        return key.equals(YearMonth.now().toString());
+    }
+
+    /** Adds a partition read at startup to the indexes. */
+    public void register(String key, Map<Integer, Order> partition) {
+        lock.writeLock().lock();
+        try {
+            int ordinal = ordinal(key);
+            for (Order order : partition.values()) {
+                index(order, ordinal);
+            }
+            resident.put(key, partition);
+            touch(key);
+            evictIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stores the order in its month's partition and pins that partition
+     * until its next checkpoint.
+     *
+     * @return the key of the partition it moved out of, or null
+     */
+    public String put(Order order) {
+        String key = keyOf(order);
+        int id = order.getId();
+        // Partitions loaded outside the lock on earlier passes
+        Map<String, Map<Integer, Order>> loaded = new HashMap<>(2);
+        while (true) {
+            String missing;
+            lock.writeLock().lock();
+            try {
+                int ordinal = ordinal(key);
+                int previous = id < partitionOf.length ? partitionOf[id] - 1 : -1;
+                String movedFrom = previous >= 0 && previous != ordinal ? keys.get(previous) : null;
+                // Pin first so installing one partition cannot evict the other
+                long stamp = ++writes;
+                pinned.put(key, stamp);
+                if (movedFrom != null) {
+                    pinned.put(movedFrom, stamp);
+                }
+                Map<Integer, Order> target = install(key, loaded.get(key));
+                Map<Integer, Order> source = movedFrom == null ? target : install(movedFrom, loaded.get(movedFrom));
+                if (target != null && source != null) {
+                    Order replaced = source.remove(id);
+                    target.put(id, order);
+                    if (previous < 0) {
+                        index(order, ordinal);
+                    } else {
+                        partitionOf[id] = ordinal + 1;
+                        if (replaced != null && replaced.getUserId() != order.getUserId()) {
+                            // Same id, different owner: move it between the users' indexes
+                            IntList ids = ordersByUser.get(replaced.getUserId());
+                            if (ids != null) {
+                                ids.removeSorted(id);
+                            }
+                            ordersByUser.computeIfAbsent(order.getUserId(), u -> new IntList()).addSorted(id);
+                        }
+                    }
+                    return movedFrom;
+                }
+                missing = target == null ? key : movedFrom;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            loaded.put(missing, load(missing));
+        }
+    }
+
+    /**
+     * Makes the partitions {@code put(order)} will write to resident,
+     * loading them without holding any lock, so callers that serialise
+     * their writes can do the slow part first. put still loads whatever
+     * has been evicted again in between.
+     */
+    public void prefetch(Order order) {
+        String key = keyOf(order);
+        int id = order.getId();
+        String current = null;
+        boolean known;
+        lock.readLock().lock();
+        try {
+            known = ordinals.containsKey(key);
+            int previous = id > 0 && id < partitionOf.length ? partitionOf[id] - 1 : -1;
+            if (previous >= 0) {
+                current = keys.get(previous);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        // A month with no partition yet starts out empty in put; nothing to read
+        if (known) {
+            partition(key);
+        }
+        if (current != null && !current.equals(key)) {
+            partition(current);
+        }
+    }
+
+    // Index-only check; never loads a partition
+    public boolean contains(int orderId) {
+        lock.readLock().lock();
+        try {
+            return orderId > 0 && orderId < partitionOf.length && partitionOf[orderId] != 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Order get(int orderId) {
+        String key;
+        lock.readLock().lock();
+        try {
+            if (orderId <= 0 || orderId >= partitionOf.length || partitionOf[orderId] == 0) {
+                return null;
+            }
+            key = keys.get(partitionOf[orderId] - 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return partition(key).get(orderId);
+    }
+
+    public List<Order> getUserOrders(int userId) {
+        return getUserOrders(userId, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * A page of a user's orders, newest first.
+     *
+     * @param beforeId only orders with a smaller id (the previous page's last id)
+     * @param limit    maximum number of orders returned
+     */
+    public List<Order> getUserOrders(int userId, int beforeId, int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        int[] ids;
+        String[] idKeys;
+        lock.readLock().lock();
+        try {
+            IntList userIds = ordersByUser.get(userId);
+            if (userIds == null) {
+                return new ArrayList<>();
+            }
+            int end = userIds.lowerBound(beforeId);
+            ids = new int[end];
+            idKeys = new String[end];
+            for (int i = 0; i < end; i++) {
+                ids[i] = userIds.get(i);
+                idKeys[i] = keys.get(partitionOf[ids[i]] - 1);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Order> result = new ArrayList<>(Math.min(ids.length, limit));
+        Map<String, Map<Integer, Order>> seen = new HashMap<>();
+        for (int i = ids.length - 1; i >= 0 && result.size() < limit; i--) {
+            Order order = seen.computeIfAbsent(idKeys[i], this::partition).get(ids[i]);
+            if (order == null) {
+                // Moved to another month since the index was read
+                order = get(ids[i]);
+            }
+            // The index is only a hint; ownership is decided by the order itself
+            if (order != null && order.getUserId() == userId) {
+                result.add(order);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Visits every partition, oldest month first. Cold partitions are loaded
+     * one at a time and not promoted, so a full scan does not flush the LRU.
+     */
+    public void forEachPartition(Consumer<Collection<Order>> visitor) {
+        for (String key : partitionKeys()) {
+            Map<Integer, Order> partition;
+            lock.readLock().lock();
+            try {
+                partition = peek(key);
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (partition == null) {
+                Map<Integer, Order> fresh = load(key);
+                lock.writeLock().lock();
+                try {
+                    partition = peek(key);
+                    if (partition == null) {
+                        partition = fresh;
+                        cold.put(key, new SoftReference<>(partition));
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            visitor.accept(partition.values());
+        }
+    }
+
+    /** The whole partition, loading it if needed; used for checkpoints. */
+    public Map<Integer, Order> getPartition(String key) {
+        return partition(key);
+    }
+
+    /** Stamp of the partition's latest write, to hand back to {@link #unpin} after a checkpoint. */
+    public long pinStamp(String key) {
+        lock.readLock().lock();
+        try {
+            return pinned.getOrDefault(key, -1L);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * A checkpointed partition no longer depends on memory for durability and
+     * may be evicted, unless it was written again after {@code stamp} was taken.
+     */
+    public void unpin(String key, long stamp) {
+        lock.writeLock().lock();
+        try {
+            if (pinned.getOrDefault(key, -1L) == stamp) {
+                pinned.remove(key);
+                evictIfNeeded();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<String> partitionKeys() {
+        lock.readLock().lock();
+        try {
+            List<String> sorted = new ArrayList<>(keys);
+            Collections.sort(sorted);
+            return sorted;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int maxId() {
+        lock.readLock().lock();
+        try {
+            return maxId;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public String getStatsJson() {
+        lock.readLock().lock();
+        try {
+            return "{"
+                    + "\"orders\":" + size + ","
+                    + "\"users\":" + ordersByUser.size() + ","
+                    + "\"partitions\":" + keys.size() + ","
+                    + "\"resident\":" + resident.size() + ","
+                    + "\"pinned\":" + pinned.size() + ","
+                    + "\"coldLoads\":" + coldLoads.get() + ","
+                    + "\"evictions\":" + evictions.get()
+                    + "}";
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // A partition for reading: resident hits under the read lock, anything else loaded and then installed
+    private Map<Integer, Order> partition(String key) {
+        Map<Integer, Order> partition;
+        lock.readLock().lock();
+        try {
+            partition = resident.get(key);
+            if (partition != null) {
+                touch(key);
+                return partition;
+            }
+            partition = peek(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (partition == null) {
+            partition = load(key);
+        }
+        lock.writeLock().lock();
+        try {
+            return install(key, partition);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Reads a partition without holding the lock; concurrent callers for the same key share one load
+    private Map<Integer, Order> load(String key) {
+        CompletableFuture<Map<Integer, Order>> mine = new CompletableFuture<>();
+        CompletableFuture<Map<Integer, Order>> inFlight = loading.putIfAbsent(key, mine);
+        if (inFlight != null) {
+            return inFlight.join();
+        }
+        try {
+            Map<Integer, Order> partition = loader.apply(collectionOf(key));
+            coldLoads.incrementAndGet();
+            mine.complete(partition);
+            return partition;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, mine);
+        }
+    }
+
+    // Callers hold the write lock for everything below, except peek and touch (read lock is enough)
+
+    private int ordinal(String key) {
+        Integer ordinal = ordinals.get(key);
+        if (ordinal == null) {
+            ordinal = keys.size();
+            keys.add(key);
+            ordinals.put(key, ordinal);
+            resident.put(key, new ConcurrentHashMap<>());
+            touch(key);
+        }
+        return ordinal;
+    }
+
+    private void index(Order order, int ordinal) {
+        int id = order.getId();
+        if (id >= partitionOf.length) {
+            partitionOf = Arrays.copyOf(partitionOf, Math.max(id + 1, partitionOf.length * 2));
+        }
+        partitionOf[id] = ordinal + 1;
+        ordersByUser.computeIfAbsent(order.getUserId(), u -> new IntList()).addSorted(id);
+        size++;
+        maxId = Math.max(maxId, id);
+    }
+
+    private void touch(String key) {
+        lastUsed.put(key, clock.incrementAndGet());
+    }
+
+    private Map<Integer, Order> peek(String key) {
+        Map<Integer, Order> partition = resident.get(key);
+        if (partition == null) {
+            SoftReference<Map<Integer, Order>> ref = cold.get(key);
+            partition = ref != null ? ref.get() : null;
+        }
+        return partition;
+    }
+
+    /*
+     * Makes the partition resident and returns it. What is already in memory
+     * wins over a freshly loaded copy, so every writer updates one instance;
+     * null when neither exists and the caller has to load it first.
+     */
+    private Map<Integer, Order> install(String key, Map<Integer, Order> loaded) {
+        Map<Integer, Order> partition = peek(key);
+        if (partition == null) {
+            partition = loaded;
+        }
+        if (partition == null) {
+            return null;
+        }
+        touch(key);
+        if (!resident.containsKey(key)) {
+            cold.remove(key);
+            resident.put(key, partition);
+            evictIfNeeded();
+        }
+        return partition;
+    }
+
+    // Moves the least recently used unpinned partitions to soft references
+    private void evictIfNeeded() {
+        List<String> candidates = new ArrayList<>();
+        for (String key : resident.keySet()) {
+            if (!pinned.containsKey(key) && !isActive(key)) candidates.add(key);
+        }
+        if (candidates.size() <= maxResident) {
+            return;
+        }
+        candidates.sort(Comparator.comparingLong(key -> lastUsed.getOrDefault(key, 0L)));
+        for (String key : candidates.subList(0, candidates.size() - maxResident)) {
+            cold.put(key, new SoftReference<>(resident.remove(key)));
+            evictions.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package store;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import model.Order;
+
+public interface OrderRepository {
+    Collection<Order> getAllOrders();
+
+    String getAllOrdersJson();
+
+    /** Visits every order, holding at most one cold partition in memory at a time. */
+    void forEachOrder(Consumer<Order> visitor);
+
+    Order getOrder(int orderId);
+
+    List<Order> getUserOrders(int userId);
+
+    /** Up to {@code limit} of the user's orders with ids below {@code beforeId}, newest first. */
+    List<Order> getUserOrders(int userId, int beforeId, int limit);
+
+    CompletableFuture<Void> saveOrder(Order order);
+
+    int getNextOrderId();
+}
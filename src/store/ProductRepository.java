@@ -0,0 +1,38 @@
+package store;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import model.Product;
+import search.ProductIndex;
+
+public interface ProductRepository {
+    // Read-only view in id order, backed by the current catalog snapshot
+    Collection<Product> getAllProducts();
+
+    Product getProduct(int id);
+
+    CompletableFuture<Void> saveProduct(Product product);
+
+    /**
+     * Saves a batch as one unit: one catalog version, one log append. Products
+     * with id 0 get fresh ids; explicit ids are kept.
+     */
+    CompletableFuture<Void> saveProducts(List<Product> batch);
+
+    /**
+     * Upserts and deletes applied together: readers see all of them or none,
+     * and they are persisted with a single log append.
+     */
+    CompletableFuture<Void> applyProducts(List<Product> upserts, Collection<Integer> deletes);
+
+    CompletableFuture<Void> deleteProduct(int productId);
+
+    int getNextProductId();
+
+    /** The current immutable catalog; hold on to it to read one consistent version. */
+    CatalogSnapshot getCatalog();
+
+    // Search structures kept in step with saveProduct/deleteProduct
+    ProductIndex getProductIndex();
+}
@@ -0,0 +1,219 @@
+package store;
+
+import model.*;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Field-by-field binary encoding of each entity type for snapshots.
+ * Strings are written as varint references into a per-snapshot
+ * dictionary (0 = null), so repeated values such as categories, statuses,
+ * image paths and product names are stored and decoded only once.
+ */
+final class SnapshotCodec {
+    private SnapshotCodec() {}
+
+    static final class StringTable {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        int ref(String value) {
+            if (value == null) return 0;
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = strings.size() + 1;
+                ids.put(value, id);
+                strings.add(value);
+            }
+            return id;
+        }
+
+        List<String> getStrings() {
+            return strings;
+        }
+    }
+
+    interface Codec<T> {
+        void write(T entity, DataOutput out, StringTable table) throws IOException;
+
+        T read(ByteBuffer in, String[] strings);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> Codec<T> forType(Class<T> type) {
+        if (type == Product.class) return (Codec<T>) PRODUCT;
+        if (type == User.class) return (Codec<T>) USER;
+        if (type == Cart.class) return (Codec<T>) CART;
+        if (type == Order.class) return (Codec<T>) ORDER;
+        throw new IllegalArgumentException("No snapshot codec for " + type.getName());
+    }
+
+    static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static void writeString(DataOutput out, StringTable table, String value) throws IOException {
+        writeVarInt(out, table.ref(value));
+    }
+
+    private static String readString(ByteBuffer in, String[] strings) {
+        int ref = readVarInt(in);
+        return ref == 0 ? null : strings[ref - 1];
+    }
+
+    private static void writeItem(CartItem item, DataOutput out, StringTable table) throws IOException {
+        writeVarInt(out, item.getProductId());
+        writeVarInt(out, item.getQuantity());
+        out.writeDouble(item.getPrice());
+        writeString(out, table, item.getProductName());
+        writeString(out, table, item.getImageUrl());
+    }
+
+    private static CartItem readItem(ByteBuffer in, String[] strings) {
+        int productId = readVarInt(in);
+        int quantity = readVarInt(in);
+        double price = in.getDouble();
+        return new CartItem(productId, quantity, price, readString(in, strings), readString(in, strings));
+    }
+
+    static final Codec<Product> PRODUCT = new Codec<>() {
+        @Override
+        public void write(Product p, DataOutput out, StringTable table) throws IOException {
+            writeVarInt(out, p.getId());
+            writeString(out, table, p.getName());
+            out.writeDouble(p.getPrice());
+            writeString(out, table, p.getDescription());
+            writeVarInt(out, p.getStockQuantity());
+            writeString(out, table, p.getCategory());
+            writeString(out, table, p.getSubcategory());
+            writeString(out, table, p.getImageUrl());
+            List<String> keywords = p.getKeywords() != null ? p.getKeywords() : List.of();
+            writeVarInt(out, keywords.size());
+            for (String keyword : keywords) {
+                writeString(out, table, keyword);
+            }
+        }
+
+        @Override
+        public Product read(ByteBuffer in, String[] strings) {
+            int id = readVarInt(in);
+            String name = readString(in, strings);
+            double price = in.getDouble();
+            String description = readString(in, strings);
+            int stock = readVarInt(in);
+            String category = readString(in, strings);
+            String subcategory = readString(in, strings);
+            String imageUrl = readString(in, strings);
+            int keywordCount = readVarInt(in);
+            List<String> keywords = new ArrayList<>(keywordCount);
+            for (int i = 0; i < keywordCount; i++) {
+                keywords.add(readString(in, strings));
+            }
+            return new Product(id, name, price, description, stock, category, subcategory, imageUrl, keywords);
+        }
+    };
+
+    static final Codec<User> USER = new Codec<>() {
+        @Override
+        public void write(User u, DataOutput out, StringTable table) throws IOException {
+            writeVarInt(out, u.getId());
+            writeString(out, table, u.getEmail());
+            writeString(out, table, u.getPassword());
+            writeString(out, table, u.getRole());
+        }
+
+        @Override
+        public User read(ByteBuffer in, String[] strings) {
+            int id = readVarInt(in);
+            return new User(id, readString(in, strings), readString(in, strings), readString(in, strings));
+        }
+    };
+
+    static final Codec<Cart> CART = new Codec<>() {
+        @Override
+        public void write(Cart c, DataOutput out, StringTable table) throws IOException {
+            writeVarInt(out, c.getUserId());
+            Collection<CartItem> items = c.getItems();
+            writeVarInt(out, items.size());
+            for (CartItem item : items) {
+                writeItem(item, out, table);
+            }
+        }
+
+        @Override
+        public Cart read(ByteBuffer in, String[] strings) {
+            Cart cart = new Cart(readVarInt(in));
+            int count = readVarInt(in);
+            List<CartItem> items = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                items.add(readItem(in, strings));
+            }
+            cart.setItems(items);
+            return cart;
+        }
+    };
+
+    static final Codec<Order> ORDER = new Codec<>() {
+        @Override
+        public void write(Order o, DataOutput out, StringTable table) throws IOException {
+            writeVarInt(out, o.getId());
+            writeVarInt(out, o.getUserId());
+            List<CartItem> items = o.getItems() != null ? o.getItems() : List.of();
+            writeVarInt(out, items.size());
+            for (CartItem item : items) {
+                writeItem(item, out, table);
+            }
+            out.writeDouble(o.getTotal());
+            writeString(out, table, o.getStatus());
+            writeString(out, table, o.getOrderDate());
+            ShippingAddress a = o.getShippingAddress();
+            out.writeBoolean(a != null);
+            if (a != null) {
+                writeString(out, table, a.getFullName());
+                writeString(out, table, a.getEmail());
+                writeString(out, table, a.getPhone());
+                writeString(out, table, a.getAddress());
+                writeString(out, table, a.getCity());
+                writeString(out, table, a.getState());
+                writeString(out, table, a.getPostalCode());
+            }
+        }
+
+        @Override
+        public Order read(ByteBuffer in, String[] strings) {
+            Order order = new Order(readVarInt(in), readVarInt(in));
+            int count = readVarInt(in);
+            for (int i = 0; i < count; i++) {
+                order.addItem(readItem(in, strings));
+            }
+            order.setTotal(in.getDouble());
+            order.setStatus(readString(in, strings));
+            order.setOrderDate(readString(in, strings));
+            if (in.get() != 0) {
+                order.setShippingAddress(new ShippingAddress(
+                        readString(in, strings), readString(in, strings), readString(in, strings),
+                        readString(in, strings), readString(in, strings), readString(in, strings),
+                        readString(in, strings)));
+            }
+            return order;
+        }
+    };
+}
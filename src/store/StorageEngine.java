@@ -0,0 +1,62 @@
+package store;
+
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persistence backend for the collections held by a {@link DataStore}.
+ * An engine keeps a snapshot plus an append-only log per collection:
+ * {@link #append} must cost O(batch) bytes, and {@link #checkpoint}
+ * folds the log into a new snapshot.
+ */
+public interface StorageEngine {
+    String getName();
+
+    /** Rebuilds a collection into {@code target}: last snapshot, then log replay. */
+    <T> void load(String collection, Class<T> type, Map<Integer, T> target) throws IOException;
+
+    /**
+     * Appends the mutations to the collection's log; {@code force} fsyncs before returning.
+     * @return bytes written
+     */
+    long append(String collection, List<Mutation> batch, boolean force) throws IOException;
+
+    /** Names of the collections that have a snapshot or log in this engine. */
+    Set<String> collections() throws IOException;
+
+    /** Log records written since the collection's last checkpoint. */
+    int pendingRecords(String collection);
+
+    /**
+     * Writes {@code entities} as the new snapshot and truncates the log.
+     * Appends to the same collection are blocked meanwhile, so the view may be live.
+     * @return size of the new snapshot in bytes
+     */
+    long checkpoint(String collection, Collection<?> entities) throws IOException;
+
+    void close() throws IOException;
+
+    // False when nothing survives a restart, so in-memory data must never be dropped
+    default boolean isDurable() {
+        return true;
+    }
+
+    static StorageEngine create(String name, Path dataDir, Gson gson) {
+        switch (name.trim().toLowerCase()) {
+            case "json":
+                return new JsonStorageEngine(dataDir, gson);
+            case "binary":
+                return new BinaryStorageEngine(dataDir, gson);
+            case "memory":
+                return new MemoryStorageEngine();
+            default:
+                System.err.println("Unknown storage engine '" + name + "', using json");
+                return new JsonStorageEngine(dataDir, gson);
+        }
+    }
+}
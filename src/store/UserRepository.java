@@ -0,0 +1,25 @@
+package store;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import model.User;
+
+public interface UserRepository {
+    Collection<User> getAllUsers();
+
+    User getUser(int id);
+
+    /** Case-insensitive lookup through the email index. */
+    User getUserByEmail(String email);
+
+    Map<Integer, User> getUsers();
+
+    String getAllUsersWithRole(String role);
+
+    CompletableFuture<Void> saveUser(User user);
+
+    CompletableFuture<Void> deleteUser(int id);
+
+    int getNextUserId();
+}
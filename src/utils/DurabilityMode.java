@@ -0,0 +1,19 @@
+package utils;
+
+public enum DurabilityMode {
+    // Caller appends and fsyncs the log itself before returning
+    SYNC,
+    // Caller waits while the persister batches its record with others under one fsync
+    GROUP_COMMIT,
+    // Caller returns immediately; the persister writes within the next window
+    ASYNC;
+
+    public static DurabilityMode fromString(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown durability mode '" + value + "', using GROUP_COMMIT");
+            return GROUP_COMMIT;
+        }
+    }
+}
@@ -2,34 +2,77 @@ package utils;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
 import model.*;
 import adapter.*;
+import search.ProductIndex;
+import store.CatalogSnapshot;
+import store.DataStore;
+import store.OrderPartitions;
+import store.Mutation;
+import store.StorageEngine;
 import java.io.*;
-import java.lang.reflect.Type;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
-public class JsonDataManager {
+/**
+ * In-memory {@link DataStore} backed by a pluggable {@link StorageEngine}.
+ * Reads are served from the maps; every mutation is handed to the
+ * persister as a single log record for the engine to append.
+ */
+public class JsonDataManager implements DataStore {
     private static volatile JsonDataManager instance;
+    private static volatile String configuredEngine = "json";
+    private static volatile Path configuredDataDir = Paths.get("src", "data");
     private final Gson gson;
-    private static final String DATA_DIR = "C:\\Users\\User\\IdeaProjects\\c_backend\\src\\data";
+    private final Path dataDir;
+    // Log records per collection before the snapshot is rewritten and the log truncated
+    private static final int CHECKPOINT_THRESHOLD = 1000;
+
+    private static final String PRODUCTS = "products";
+    private static final String USERS = "users";
+    private static final String CARTS = "carts";
+    private static final String ORDERS = "orders";
 
     // Thread-safe maps
     private final ConcurrentHashMap<Integer, Product> products;
     private final ConcurrentHashMap<Integer, User> users;
     private final ConcurrentHashMap<Integer, Cart> carts;
-    private final ConcurrentHashMap<Integer, Order> orders;
+    // Normalized email -> user, plus the key each user id is indexed under
+    private final ConcurrentHashMap<String, User> usersByEmail = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, String> emailKeys = new ConcurrentHashMap<>();
+    private final ProductIndex productIndex;
+    // Read side of the product map, replaced copy-on-write under catalogLock
+    private volatile CatalogSnapshot catalog = CatalogSnapshot.empty();
+    private final Object catalogLock = new Object();
+    // Orders are partitioned by month; see OrderPartitions
+    private final OrderPartitions orders;
+
+    // Snapshot + log storage, and the background writer feeding it
+    private final StorageEngine engine;
+    private final Persister persister;
+
+    // Folds logs into snapshots on a timer even when the size threshold is not reached
+    private final ScheduledExecutorService snapshotter;
+
+    // Per-collection record count and load time from startup, as JSON fragments
+    private final Map<String, String> loadStats = new ConcurrentSkipListMap<>();
 
     // ID generators
     private final AtomicInteger productIdGenerator;
     private final AtomicInteger userIdGenerator;
     private final AtomicInteger orderIdGenerator;
 
-    private JsonDataManager() {
+    private JsonDataManager(String engineName, Path dataDir) {
         // Initialize Gson with type adapters
         gson = new GsonBuilder()
                 .setPrettyPrinting()
@@ -37,10 +80,23 @@ public class JsonDataManager {
                 .registerTypeAdapter(CartItem.class, new CartItemTypeAdapter())
                 .create();
 
+        this.dataDir = dataDir;
         products = new ConcurrentHashMap<>();
+        productIndex = new ProductIndex(id -> catalog.get(id));
         users = new ConcurrentHashMap<>();
         carts = new ConcurrentHashMap<>();
-        orders = new ConcurrentHashMap<>();
+
+        engine = StorageEngine.create(engineName, dataDir, gson);
+        orders = new OrderPartitions(this::loadPartition, engine.isDurable()
+                ? Config.getInt("orders.residentPartitions", 3) : Integer.MAX_VALUE);
+
+        // Callers block on group commit, so by default it batches only what queued up during the previous fsync
+        DurabilityMode mode = DurabilityMode.fromString(Config.get("persist.mode", "group-commit"));
+        persister = new Persister(engine, mode,
+                Config.getLong("persist.windowMs", mode == DurabilityMode.ASYNC ? 50 : 0),
+                Config.getInt("persist.maxBatch", 256),
+                // An order can move between month partitions, so they are ordered as one
+                collection -> collection.startsWith(OrderPartitions.PREFIX) ? ORDERS : collection);
 
         // Initialize ID generators
         productIdGenerator = new AtomicInteger(0);
@@ -49,6 +105,26 @@ public class JsonDataManager {
 
         loadAllData();
         initializeIdGenerators();
+
+        long snapshotInterval = Config.getLong("snapshot.intervalSec", 300);
+        snapshotter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "snapshotter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (snapshotInterval > 0) {
+            snapshotter.scheduleWithFixedDelay(this::checkpointAll,
+                    snapshotInterval, snapshotInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Chooses the engine and data directory used by {@link #getInstance()}.
+     * Must be called before the first getInstance() to take effect.
+     */
+    public static void configure(String engine, Path directory) {
+        configuredEngine = engine;
+        configuredDataDir = directory;
     }
 
     // Thread-safe singleton pattern
@@ -56,13 +132,18 @@ public class JsonDataManager {
         if (instance == null) {
             synchronized (JsonDataManager.class) {
                 if (instance == null) {
-                    instance = new JsonDataManager();
+                    instance = new JsonDataManager(configuredEngine, configuredDataDir);
                 }
             }
         }
         return instance;
     }
 
+    // Standalone instance outside the singleton, e.g. to benchmark engines side by side
+    public static JsonDataManager open(String engine, Path directory) {
+        return new JsonDataManager(engine, directory);
+    }
+
     private void initializeIdGenerators() {
         // Set ID generators to max current ID + 1
         productIdGenerator.set(products.keySet().stream()
@@ -75,252 +156,479 @@ public class JsonDataManager {
                 .max()
                 .orElse(0) + 1);
 
-        orderIdGenerator.set(orders.keySet().stream()
-                .mapToInt(Integer::intValue)
-                .max()
-                .orElse(0) + 1);
+        orderIdGenerator.set(orders.maxId() + 1);
     }
 
+    /*
+     * The four collections are independent, so they load in parallel and
+     * cold start is bounded by the largest one rather than the sum.
+     */
     private void loadAllData() {
-        try {
-            System.out.println("Loading all data from directory: " + DATA_DIR);
-            Files.createDirectories(Paths.get(DATA_DIR));
+        System.out.println("Loading all data from directory: " + dataDir + " (engine: " + engine.getName() + ")");
+        long start = System.nanoTime();
 
-            System.out.println("Loading products...");
-            loadProducts();
-            System.out.println("Loaded products: " + products.size());
-
-            System.out.println("Loading users...");
-            loadUsers();
-            System.out.println("Loaded users: " + users.size());
-
-            System.out.println("Loading carts...");
-            loadCarts();
-            System.out.println("Loaded carts: " + carts.size());
-
-            System.out.println("Loading orders...");
-            loadOrders();
-            System.out.println("Loaded orders: " + orders.size());
-        } catch (IOException e) {
-            System.err.println("Error in loadAllData");
-            e.printStackTrace();
+        ExecutorService loaders = Executors.newFixedThreadPool(4);
+        try {
+            CompletableFuture.allOf(
+                    CompletableFuture.runAsync(() -> load(PRODUCTS, Product.class, products), loaders),
+                    CompletableFuture.runAsync(() -> load(USERS, User.class, users), loaders),
+                    CompletableFuture.runAsync(() -> load(CARTS, Cart.class, carts), loaders),
+                    CompletableFuture.runAsync(this::loadOrders, loaders)
+            ).join();
+        } finally {
+            loaders.shutdown();
+        }
+        System.out.println("Loaded all data in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        users.values().forEach(this::indexEmail);
+        // A row the catalog cannot hold is dropped here, not allowed to stop startup
+        products.values().removeIf(product -> {
+            if (Product.isValidId(product.getId())) return false;
+            System.err.println("Dropping product with invalid id " + product.getId());
+            return true;
+        });
+        catalog = catalog.replaceAll(products.values());
+        products.values().forEach(productIndex::add);
+        productIndex.rebuildSuggestions();
+
+        // Fold replayed log records into fresh snapshots
+        checkpointAll();
+    }
+
+    private void checkpointAll() {
+        checkpoint(PRODUCTS, products, 1);
+        checkpoint(USERS, users, 1);
+        checkpoint(CARTS, carts, 1);
+        for (String key : orders.partitionKeys()) {
+            checkpointPartition(key, 1);
         }
     }
 
-    private void loadProducts() {
-        List<Product> productList = loadData("products.json", new TypeToken<List<Product>>(){}.getType());
-        products.clear();
-        productList.forEach(p -> products.put(p.getId(), p));
-    }
-
-    private void loadUsers() {
-        List<User> userList = loadData("users.json", new TypeToken<List<User>>(){}.getType());
-        System.out.println("Loaded Users: " + users);
-        users.clear();
-        userList.forEach(u -> users.put(u.getId(), u));
+    private <T> void load(String collection, Class<T> type, Map<Integer, T> target) {
+        long start = System.nanoTime();
+        try {
+            engine.load(collection, type, target);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error loading " + collection);
+            e.printStackTrace();
+        }
+        markSaved(target.values());
+        recordLoad(collection, target.size(), start);
     }
 
-    private void loadCarts() {
-        List<Cart> cartList = loadData("carts.json", new TypeToken<List<Cart>>(){}.getType());
-        System.out.println("Loaded carts: " + cartList); // Debugging line
-        carts.clear();
-        cartList.forEach(c -> carts.put(c.getUserId(), c));
+    private void recordLoad(String collection, int records, long start) {
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        loadStats.put(collection, "{\"records\":" + records + ",\"millis\":" + millis + "}");
+        System.out.println("Loaded " + collection + ": " + records + " records in " + millis + " ms");
     }
 
+    /*
+     * Reads every month partition once to build the order indexes. Each
+     * partition is handed to OrderPartitions, which keeps only the recent
+     * ones resident.
+     */
     private void loadOrders() {
-        System.out.println("Loading orders from file...");
+        long start = System.nanoTime();
+        migrateUnpartitionedOrders();
         try {
-            Path filePath = Paths.get(DATA_DIR, "orders.json");
-            if (!Files.exists(filePath)) {
-                Files.createFile(filePath);
-                saveData("orders.json", new ArrayList<>());
-            }
-
-            String content = new String(Files.readAllBytes(filePath));
-            System.out.println("Orders file content: " + content);
-
-            if (content.trim().isEmpty()) {
-                content = "[]";
-            }
-
-            List<Order> orderList = gson.fromJson(content, new TypeToken<List<Order>>(){}.getType());
-            System.out.println("Parsed orders: " + orderList);
-
-            orders.clear();
-            if (orderList != null) {
-                for (Order order : orderList) {
-                    if (order != null && order.getId() > 0) {
-                        orders.put(order.getId(), order);
-                        System.out.println("Added order to map: " + order.getId());
-                    }
+            for (String collection : engine.collections()) {
+                if (collection.startsWith(OrderPartitions.PREFIX)) {
+                    String key = collection.substring(OrderPartitions.PREFIX.length());
+                    Map<Integer, Order> partition = loadPartition(collection);
+                    partition.values().forEach(this::recordSales);
+                    orders.register(key, partition);
                 }
             }
         } catch (IOException e) {
-            System.err.println("Error loading orders: " + e.getMessage());
+            System.err.println("Error listing order partitions");
             e.printStackTrace();
         }
-        System.out.println("Final orders map: " + orders);
+        recordLoad(ORDERS, orders.size(), start);
     }
 
-    private <T> List<T> loadData(String filename, Type type) {
+    private Map<Integer, Order> loadPartition(String collection) {
+        Map<Integer, Order> partition = new ConcurrentHashMap<>();
         try {
-            Path filePath = Paths.get(DATA_DIR, filename);
-            System.out.println("Loading data from: " + filePath);
-
-            if (!Files.exists(filePath)) {
-                System.out.println("File does not exist: " + filePath);
-                Files.createFile(filePath);
-                saveData(filename, new ArrayList<>());
-                return new ArrayList<>();
+            engine.load(collection, Order.class, partition);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error loading " + collection);
+            e.printStackTrace();
+        }
+        partition.remove(0);
+        markSaved(partition.values());
+        return partition;
+    }
+
+    // Whatever was just read from disk matches disk, so it starts out clean
+    private static void markSaved(Collection<?> entities) {
+        for (Object entity : entities) {
+            if (entity instanceof VersionedEntity) {
+                VersionedEntity versioned = (VersionedEntity) entity;
+                versioned.markSaved(versioned.getVersion());
             }
+        }
+    }
 
-            String jsonContent = new String(Files.readAllBytes(filePath));
-            System.out.println("File content for " + filename + ": " + jsonContent);
+    // One-time move of a single orders collection into month partitions
+    private void migrateUnpartitionedOrders() {
+        Map<Integer, Order> legacy = new HashMap<>();
+        load(ORDERS, Order.class, legacy);
+        legacy.remove(0);
+        if (legacy.isEmpty()) {
+            return;
+        }
 
-            if (jsonContent.trim().isEmpty()) {
-                System.out.println("File is empty, returning empty list");
-                return new ArrayList<>();
+        System.out.println("Partitioning " + legacy.size() + " orders by month");
+        Map<String, List<Mutation>> byMonth = new TreeMap<>();
+        for (Order order : legacy.values()) {
+            byMonth.computeIfAbsent(OrderPartitions.keyOf(order), k -> new ArrayList<>())
+                    .add(Mutation.upsert(order.getId(), order));
+        }
+        try {
+            for (Map.Entry<String, List<Mutation>> entry : byMonth.entrySet()) {
+                engine.append(OrderPartitions.collectionOf(entry.getKey()), entry.getValue(), true);
             }
-
-            List<T> data = gson.fromJson(jsonContent, type);
-            System.out.println("Parsed data: " + data);
-            return data != null ? data : new ArrayList<>();
+            engine.checkpoint(ORDERS, List.of());
         } catch (IOException e) {
-            System.err.println("Error loading data from " + filename);
+            System.err.println("Error partitioning orders");
             e.printStackTrace();
-            return new ArrayList<>();
         }
     }
 
-    private synchronized void saveData(String filename, Collection<?> data) {
-        try {
-            Files.createDirectories(Paths.get(DATA_DIR));
-            Path filePath = Paths.get(DATA_DIR, filename);
-            System.out.println("Saving data to: " + filePath);
+    // apply makes the change in memory; see Persister.submit for why it is handed over
+    private CompletableFuture<Void> logUpsert(String collection, int id, Object entity, Map<Integer, ?> data,
+                                              Runnable apply) {
+        return persister.submit(collection, Mutation.upsert(id, entity), apply,
+                () -> checkpoint(collection, data, CHECKPOINT_THRESHOLD));
+    }
 
-            String json = gson.toJson(data);
-            Files.write(filePath, json.getBytes());
+    private CompletableFuture<Void> logDelete(String collection, int id, Map<Integer, ?> data, Runnable apply) {
+        return persister.submit(collection, Mutation.delete(id), apply,
+                () -> checkpoint(collection, data, CHECKPOINT_THRESHOLD));
+    }
 
-            System.out.println("Successfully saved data to " + filename);
-        } catch (IOException e) {
-            System.err.println("Error saving data to " + filename);
-            e.printStackTrace();
+    // Rewrites the snapshot once at least `threshold` log records have built up
+    private boolean checkpoint(String collection, Map<Integer, ?> data, int threshold) {
+        int pending = engine.pendingRecords(collection);
+        if (pending > 0 && pending >= threshold) {
+            try {
+                persister.recordCheckpoint(engine.checkpoint(collection, data.values()));
+                return true;
+            } catch (IOException e) {
+                System.err.println("Error checkpointing " + collection);
+                e.printStackTrace();
+            }
+        }
+        return false;
+    }
+
+    private void checkpointPartition(String key, int threshold) {
+        String collection = OrderPartitions.collectionOf(key);
+        // Taken first: a write that lands during the checkpoint keeps the partition pinned
+        long stamp = orders.pinStamp(key);
+        if (engine.pendingRecords(collection) >= threshold
+                && checkpoint(collection, orders.getPartition(key), threshold)) {
+            orders.unpin(key, stamp);
         }
     }
 
     // Thread-safe product methods
+    @Override
     public Collection<Product> getAllProducts() {
-        return new ArrayList<>(products.values());
+        return catalog.getProducts();
     }
 
+    @Override
     public Product getProduct(int id) {
-        return products.get(id);
+        return catalog.get(id);
+    }
+
+    @Override
+    public CatalogSnapshot getCatalog() {
+        return catalog;
     }
 
-    public void saveProduct(Product product) {
+    @Override
+    public CompletableFuture<Void> saveProduct(Product product) {
         if (product.getId() == 0) {
             product.setId(productIdGenerator.getAndIncrement());
         }
-        products.put(product.getId(), product);
-        saveData("products.json", products.values());
+        Product.requireValidId(product.getId());
+        return logUpsert(PRODUCTS, product.getId(), product, products, () -> {
+            // Index before publishing, so no reader sees a catalog version whose search results lag behind it
+            productIndex.add(product);
+            synchronized (catalogLock) {
+                catalog = catalog.with(product);
+            }
+            // Last, so a failure above leaves the map as it was and nothing is logged
+            products.put(product.getId(), product);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> saveProducts(List<Product> batch) {
+        return applyProducts(batch, List.of());
+    }
+
+    @Override
+    public CompletableFuture<Void> applyProducts(List<Product> upserts, Collection<Integer> deletes) {
+        for (Product product : upserts) {
+            if (product.getId() != 0) {
+                Product.requireValidId(product.getId());
+            }
+        }
+        List<Mutation> mutations = new ArrayList<>(upserts.size() + deletes.size());
+        // Let the log grow as large as the snapshot before rewriting it, so a
+        // long import costs a logarithmic number of rewrites rather than one per batch
+        return persister.submitAll(PRODUCTS, mutations, () -> {
+            // Batches apply one at a time and each becomes visible as a single catalog version
+            synchronized (catalogLock) {
+                for (Product product : upserts) {
+                    if (product.getId() == 0) {
+                        product.setId(Product.requireValidId(productIdGenerator.getAndIncrement()));
+                    } else {
+                        // Explicit ids must never be handed out again
+                        productIdGenerator.accumulateAndGet(product.getId() + 1, Math::max);
+                    }
+                }
+                // Index changes and the publish happen under the index's write lock,
+                // so a search sees the whole batch in both or none of it
+                productIndex.apply(upserts, deletes, () -> catalog = catalog.withChanges(upserts, deletes));
+
+                // The map and the log follow only once the catalog has the batch
+                for (Product product : upserts) {
+                    products.put(product.getId(), product);
+                    mutations.add(Mutation.upsert(product.getId(), product));
+                }
+                for (int id : deletes) {
+                    products.remove(id);
+                    mutations.add(Mutation.delete(id));
+                }
+            }
+        }, () -> checkpoint(PRODUCTS, products, Math.max(CHECKPOINT_THRESHOLD, products.size())));
     }
 
     // Thread-safe user methods
+    @Override
     public Collection<User> getAllUsers() {
         return new ArrayList<>(users.values());
     }
 
+    @Override
     public User getUser(int id) {
         return users.get(id);
     }
 
-    public void saveUser(User user) {
-        users.put(user.getId(), user);
-        saveData("users.json", new ArrayList<>(users.values()));
+    @Override
+    public User getUserByEmail(String email) {
+        return email == null ? null : usersByEmail.get(normalizeEmail(email));
+    }
+
+    @Override
+    public CompletableFuture<Void> saveUser(User user) {
+        if (user.getId() == 0) {
+            user.setId(userIdGenerator.getAndIncrement());
+        }
+        return logUpsert(USERS, user.getId(), user, users, () -> {
+            users.put(user.getId(), user);
+            indexEmail(user);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteUser(int id) {
+        return logDelete(USERS, id, users, () -> {
+            users.remove(id);
+            String key = emailKeys.remove(id);
+            if (key != null) {
+                usersByEmail.computeIfPresent(key, (k, u) -> u.getId() == id ? null : u);
+            }
+        });
+    }
+
+    public static String normalizeEmail(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // Re-keys the user if the email changed since it was last indexed
+    private void indexEmail(User user) {
+        String key = user.getEmail() == null ? null : normalizeEmail(user.getEmail());
+        String previous = key == null ? emailKeys.remove(user.getId()) : emailKeys.put(user.getId(), key);
+        if (previous != null && !previous.equals(key)) {
+            usersByEmail.computeIfPresent(previous, (k, u) -> u.getId() == user.getId() ? null : u);
+        }
+        if (key != null) {
+            usersByEmail.put(key, user);
+        }
     }
 
     // Thread-safe cart methods
+    @Override
     public Cart getCart(int userId) {
         return carts.computeIfAbsent(userId, id -> new Cart(id));
     }
 
-    public void saveCart(Cart cart) {
-        carts.put(cart.getUserId(), cart);
-        saveData("carts.json", carts.values());
+    @Override
+    public CompletableFuture<Void> saveCart(Cart cart) {
+        return logUpsert(CARTS, cart.getUserId(), cart, carts, () -> carts.put(cart.getUserId(), cart));
     }
 
     // Thread-safe order methods
+    @Override
     public Collection<Order> getAllOrders() {
-        return new ArrayList<>(orders.values());
+        List<Order> all = new ArrayList<>(orders.size());
+        orders.forEachPartition(all::addAll);
+        return all;
+    }
+
+    @Override
+    public void forEachOrder(Consumer<Order> visitor) {
+        orders.forEachPartition(partition -> partition.forEach(visitor));
     }
 
+    @Override
     public Order getOrder(int orderId) {
         return orders.get(orderId);
     }
 
+    @Override
     public List<Order> getUserOrders(int userId) {
-        return orders.values().stream()
-                .filter(order -> order.getUserId() == userId)
-                .collect(Collectors.toList());
+        return orders.getUserOrders(userId);
+    }
+
+    @Override
+    public List<Order> getUserOrders(int userId, int beforeId, int limit) {
+        return orders.getUserOrders(userId, beforeId, limit);
     }
 
-    public void saveOrder(Order order) {
+    @Override
+    public CompletableFuture<Void> saveOrder(Order order) {
         if (order.getId() == 0) {
             order.setId(orderIdGenerator.getAndIncrement());
         }
-        orders.put(order.getId(), order);
-        saveData("orders.json", new ArrayList<>(orders.values()));
+        String key = OrderPartitions.keyOf(order);
+        // Cold partitions are read from disk here, before the orders' ordering lock is taken
+        orders.prefetch(order);
+        return persister.submit(OrderPartitions.collectionOf(key), Mutation.upsert(order.getId(), order), () -> {
+            if (!orders.contains(order.getId())) {
+                recordSales(order);
+            }
+            String movedFrom = orders.put(order);
+            if (movedFrom != null) {
+                persister.submitNested(OrderPartitions.collectionOf(movedFrom), Mutation.delete(order.getId()),
+                        () -> checkpointPartition(movedFrom, CHECKPOINT_THRESHOLD));
+            }
+        }, () -> checkpointPartition(key, CHECKPOINT_THRESHOLD));
+    }
+
+    @Override
+    public String getPersistenceStatsJson() {
+        return persister.getStatsJson();
+    }
+
+    @Override
+    public String getOrderStatsJson() {
+        return orders.getStatsJson();
+    }
+
+    @Override
+    public String getLoadStatsJson() {
+        return loadStats.entrySet().stream()
+                .map(e -> "\"" + e.getKey() + "\":" + e.getValue())
+                .collect(Collectors.joining(",", "{", "}"));
+    }
+
+    // Flushes queued log writes; called from the server's shutdown hook
+    @Override
+    public void close() {
+        snapshotter.shutdownNow();
+        persister.shutdown();
+        try {
+            engine.close();
+        } catch (IOException e) {
+            System.err.println("Error closing storage engine " + engine.getName());
+        }
+    }
+
+    /**
+     * Writes every collection as a pretty-printed JSON array into {@code directory},
+     * in the same layout the json engine uses, whatever engine is active.
+     */
+    @Override
+    public void exportJson(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Map<String, Collection<?>> collections = new LinkedHashMap<>();
+        collections.put(PRODUCTS, products.values());
+        collections.put(USERS, users.values());
+        collections.put(CARTS, carts.values());
+        collections.put(ORDERS, getAllOrders());
+        for (Map.Entry<String, Collection<?>> entry : collections.entrySet()) {
+            try (Writer writer = Files.newBufferedWriter(directory.resolve(entry.getKey() + ".json"))) {
+                gson.toJson(new ArrayList<>(entry.getValue()), writer);
+            }
+        }
+        System.out.println("Exported JSON to " + directory);
+    }
+
+    public Path getDataDir() {
+        return dataDir;
     }
 
+    @Override
+    public String getEngineName() {
+        return engine.getName();
+    }
+
+    @Override
     public Gson getGson() {
         return gson;
     }
 
+    @Override
     public Map<Integer, User> getUsers() {
         return users;
     }
 
     // Utility methods
+    @Override
     public int getNextProductId() {
         return productIdGenerator.get();
     }
 
+    @Override
     public int getNextUserId() {
         return userIdGenerator.get();
     }
 
+    @Override
     public int getNextOrderId() {
         return orderIdGenerator.get();
     }
 
-    public void deleteProduct(int productId) {
-        products.remove(productId);
-        saveData("products.json", products.values());
+    @Override
+    public CompletableFuture<Void> deleteProduct(int productId) {
+        return logDelete(PRODUCTS, productId, products, () -> {
+            synchronized (catalogLock) {
+                catalog = catalog.without(productId);
+            }
+            productIndex.remove(productId);
+            products.remove(productId);
+        });
     }
 
-    /*private synchronized void saveData(String filename, Object data) {
-        try {
-            Files.createDirectories(Paths.get(DATA_DIR));
-            Path filePath = Paths.get(DATA_DIR, filename);
-            System.out.println("Saving data to: " + filePath);
-
-            String json;
-            if (data instanceof String) {
-                json = (String) data;
-            } else if (data instanceof Collection) {
-                json = gson.toJson(data);
-            } else {
-                json = gson.toJson(data);
+    private void recordSales(Order order) {
+        if (order.getItems() != null) {
+            for (CartItem item : order.getItems()) {
+                productIndex.recordSale(item.getProductId(), item.getQuantity());
             }
-
-            Files.write(filePath, json.getBytes());
-            System.out.println("Successfully saved data to " + filename);
-        } catch (IOException e) {
-            System.err.println("Error saving data to " + filename);
-            e.printStackTrace();
         }
-    }*/
+    }
 
+    @Override
+    public ProductIndex getProductIndex() {
+        return productIndex;
+    }
+
+    @Override
     public String getAllUsersWithRole(String role) {
         return gson.toJson(
                 users.values().stream()
@@ -329,66 +637,8 @@ public class JsonDataManager {
         );
     }
 
+    @Override
     public String getAllOrdersJson() {
-        return gson.toJson(new ArrayList<>(orders.values()));
-    }
-
-    public String readFile(String filename) {
-        try {
-            Path filePath = Paths.get(DATA_DIR, filename);
-            if (!Files.exists(filePath)) {
-                return "";
-            }
-            return new String(Files.readAllBytes(filePath));
-        } catch (IOException e) {
-            System.err.println("Error reading file " + filename + ": " + e.getMessage());
-            return "";
-        }
-    }
-
-    public void writeFile(String filename, String content) {
-        try {
-            Path filePath = Paths.get(DATA_DIR, filename);
-            Files.write(filePath, content.getBytes());
-        } catch (IOException e) {
-            System.err.println("Error writing to file " + filename + ": " + e.getMessage());
-        }
-    }
-
-    public void appendToFile(String filename, String content) {
-        try {
-            String filePath = DATA_DIR + filename;
-            if (!Files.exists(Paths.get(filePath))) {
-                writeFile(filename, "[]");
-            }
-
-            String existingContent = readFile(filename);
-            if (existingContent.equals("[]")) {
-                writeFile(filename, "[" + content + "]");
-            } else {
-                String newContent = existingContent.substring(0, existingContent.length() - 1)
-                        + "," + content + "]";
-                writeFile(filename, newContent);
-            }
-        } catch (Exception e) {
-            System.err.println("Error appending to file " + filename + ": " + e.getMessage());
-        }
-    }
-
-    public void deleteFromFile(String filename, int id) {
-        try {
-            String content = readFile(filename);
-            if (content.isEmpty()) return;
-
-            // Parse the JSON array, remove the item, and write back
-            // This is a simplified version - you might want to implement specific deletion logic
-            String newContent = content.replaceAll(
-                    "\\{[^}]*\"id\"\\s*:\\s*" + id + "[^}]*\\},?", ""
-            ).replaceAll("\\[\\s*,", "[").replaceAll(",\\s*\\]", "]");
-
-            writeFile(filename, newContent);
-        } catch (Exception e) {
-            System.err.println("Error deleting from file " + filename + ": " + e.getMessage());
-        }
+        return gson.toJson(getAllOrders());
     }
 }
\ No newline at end of file
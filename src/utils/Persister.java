@@ -0,0 +1,283 @@
+package utils;
+
+import model.VersionedEntity;
+import store.Mutation;
+import store.StorageEngine;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Single background thread that owns mutation log writes.
+ * Records submitted within one window (or until the batch is full) are
+ * grouped per collection, repeated writes of the same id are coalesced
+ * into the newest one, and each log is appended and fsynced once per batch.
+ * Upserts of versioned entities that have not changed since their last
+ * successful write are dropped before they reach the log.
+ */
+public class Persister {
+    private static final class PendingWrite {
+        final String collection;
+        final List<Mutation> mutations;
+        final Runnable afterFlush;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        PendingWrite(String collection, List<Mutation> mutations, Runnable afterFlush) {
+            this.collection = collection;
+            this.mutations = mutations;
+            this.afterFlush = afterFlush;
+        }
+    }
+
+    private final StorageEngine engine;
+    private final DurabilityMode mode;
+    private final long windowNanos;
+    private final int maxBatch;
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    // Held while a caller's in-memory change is applied and its write queued, one per ordering domain
+    private final Map<String, ReentrantLock> ordering = new ConcurrentHashMap<>();
+    // Collection -> ordering domain; collections sharing an id space share a domain
+    private final Function<String, String> domainOf;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    // Counters
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong fsyncs = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong cleanSkips = new AtomicLong();
+    private final AtomicLong logBytes = new AtomicLong();
+    private final AtomicLong checkpoints = new AtomicLong();
+    private final AtomicLong checkpointBytes = new AtomicLong();
+
+    /**
+     * @param domainOf maps a collection to the lock its writes are ordered
+     *                 under; collections whose ids can move between them
+     *                 (month partitions of one collection) must share one
+     */
+    public Persister(StorageEngine engine, DurabilityMode mode, long windowMillis, int maxBatch,
+                     Function<String, String> domainOf) {
+        this.engine = engine;
+        this.domainOf = domainOf;
+        this.mode = mode;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maxBatch = Math.max(1, maxBatch);
+        this.thread = new Thread(this::run, "persister");
+        this.thread.setDaemon(true);
+        if (mode != DurabilityMode.SYNC) {
+            thread.start();
+        }
+    }
+
+    public DurabilityMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Persists one mutation according to the durability mode. {@code apply}
+     * is the in-memory change the mutation records; it runs under the same
+     * lock that queues the mutation, so writes of one id reach the log in
+     * the order their changes were made and coalescing keeps the newest.
+     * The lock is per ordering domain, so writers to other collections never
+     * wait on it; in SYNC mode it is also held across the append and fsync.
+     * The returned future completes once the record is durable on disk; in
+     * ASYNC mode the caller is expected not to wait on it.
+     */
+    public CompletableFuture<Void> submit(String collection, Mutation mutation, Runnable apply, Runnable afterFlush) {
+        return submitAll(collection, List.of(mutation), apply, afterFlush);
+    }
+
+    /**
+     * Persists a batch of mutations to one collection as a unit: they always
+     * land in the same log append and fsync, however large the batch. The
+     * list may be filled in by {@code apply}.
+     */
+    public CompletableFuture<Void> submitAll(String collection, List<Mutation> mutations, Runnable apply,
+                                             Runnable afterFlush) {
+        PendingWrite write = new PendingWrite(collection, mutations, afterFlush);
+        ReentrantLock lock = lockFor(collection);
+        lock.lock();
+        try {
+            apply.run();
+            enqueue(write);
+        } finally {
+            lock.unlock();
+        }
+        if (mode == DurabilityMode.GROUP_COMMIT) {
+            try {
+                write.done.join();
+            } catch (CompletionException e) {
+                System.err.println("Error persisting to " + collection + ": " + e.getCause().getMessage());
+            }
+        }
+        return write.done;
+    }
+
+    /**
+     * Queues a mutation to another collection of the same ordering domain
+     * from inside an {@code apply}, without waiting. It is queued ahead of
+     * the outer write, so waiting on that one covers both.
+     */
+    public CompletableFuture<Void> submitNested(String collection, Mutation mutation, Runnable afterFlush) {
+        if (!lockFor(collection).isHeldByCurrentThread()) {
+            throw new IllegalStateException("submitNested outside of a submit to the same domain");
+        }
+        PendingWrite write = new PendingWrite(collection, List.of(mutation), afterFlush);
+        enqueue(write);
+        return write.done;
+    }
+
+    private ReentrantLock lockFor(String collection) {
+        return ordering.computeIfAbsent(domainOf.apply(collection), d -> new ReentrantLock());
+    }
+
+    // Caller holds the collection's ordering lock
+    private void enqueue(PendingWrite write) {
+        submitted.addAndGet(write.mutations.size());
+        if (mode == DurabilityMode.SYNC || !running) {
+            flush(List.of(write));
+        } else {
+            queue.add(write);
+        }
+    }
+
+    private void run() {
+        List<PendingWrite> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingWrite next = remaining > 0
+                            ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                            : queue.poll();
+                    if (next == null) break;
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                System.err.println("Persister error: " + e.getMessage());
+                e.printStackTrace();
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        // Group per collection, keeping only the newest write for each id
+        Map<String, LinkedHashMap<Integer, Mutation>> byCollection = new LinkedHashMap<>();
+        Map<String, List<PendingWrite>> waiters = new LinkedHashMap<>();
+        for (PendingWrite write : batch) {
+            LinkedHashMap<Integer, Mutation> latest =
+                    byCollection.computeIfAbsent(write.collection, c -> new LinkedHashMap<>());
+            for (Mutation mutation : write.mutations) {
+                if (latest.remove(mutation.getId()) != null) {
+                    coalesced.incrementAndGet();
+                }
+                latest.put(mutation.getId(), mutation);
+            }
+            waiters.computeIfAbsent(write.collection, c -> new ArrayList<>()).add(write);
+        }
+        batches.incrementAndGet();
+
+        for (Map.Entry<String, LinkedHashMap<Integer, Mutation>> entry : byCollection.entrySet()) {
+            String collection = entry.getKey();
+            List<PendingWrite> collectionWaiters = waiters.get(collection);
+            try {
+                List<Mutation> mutations = new ArrayList<>(entry.getValue().size());
+                List<VersionedEntity> versioned = new ArrayList<>();
+                List<Long> versions = new ArrayList<>();
+                for (Mutation mutation : entry.getValue().values()) {
+                    if (mutation.getEntity() instanceof VersionedEntity) {
+                        VersionedEntity entity = (VersionedEntity) mutation.getEntity();
+                        if (!entity.isDirty()) {
+                            cleanSkips.incrementAndGet();
+                            continue;
+                        }
+                        // Read before serialising; a concurrent change leaves the entity dirty
+                        versioned.add(entity);
+                        versions.add(entity.getVersion());
+                    }
+                    mutations.add(mutation);
+                }
+                if (!mutations.isEmpty()) {
+                    logBytes.addAndGet(engine.append(collection, mutations, true));
+                    written.addAndGet(mutations.size());
+                    fsyncs.incrementAndGet();
+                    for (int i = 0; i < versioned.size(); i++) {
+                        versioned.get(i).markSaved(versions.get(i));
+                    }
+                }
+                collectionWaiters.forEach(w -> w.done.complete(null));
+            } catch (IOException | RuntimeException e) {
+                failures.incrementAndGet();
+                System.err.println("Error appending to " + collection);
+                e.printStackTrace();
+                collectionWaiters.forEach(w -> w.done.completeExceptionally(e));
+            }
+
+            // Checkpoint at most once per collection per batch
+            collectionWaiters.get(collectionWaiters.size() - 1).afterFlush.run();
+        }
+    }
+
+    /** Drains everything still queued; used on shutdown. */
+    public void shutdown() {
+        running = false;
+        if (thread.isAlive()) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        List<PendingWrite> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            flush(rest);
+        }
+    }
+
+    /** Records a snapshot rewrite so its size shows up next to the log volume. */
+    public void recordCheckpoint(long bytes) {
+        checkpoints.incrementAndGet();
+        checkpointBytes.addAndGet(bytes);
+    }
+
+    public String getStatsJson() {
+        long records = written.get();
+        return "{"
+                + "\"engine\":\"" + engine.getName() + "\","
+                + "\"mode\":\"" + mode + "\","
+                + "\"windowMs\":" + TimeUnit.NANOSECONDS.toMillis(windowNanos) + ","
+                + "\"maxBatch\":" + maxBatch + ","
+                + "\"submitted\":" + submitted.get() + ","
+                + "\"written\":" + written.get() + ","
+                + "\"coalesced\":" + coalesced.get() + ","
+                + "\"batches\":" + batches.get() + ","
+                + "\"fsyncs\":" + fsyncs.get() + ","
+                + "\"failures\":" + failures.get() + ","
+                + "\"cleanSkips\":" + cleanSkips.get() + ","
+                + "\"logBytes\":" + logBytes.get() + ","
+                + "\"bytesPerMutation\":" + (records == 0 ? 0 : logBytes.get() / records) + ","
+                + "\"checkpoints\":" + checkpoints.get() + ","
+                + "\"checkpointBytes\":" + checkpointBytes.get() + ","
+                + "\"queued\":" + queue.size()
+                + "}";
+    }
+}
@@ -3,12 +3,15 @@ package utils;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
 import com.sun.net.httpserver.HttpExchange;
 import model.*;
 import adapter.*;
 import java.io.*;
 import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -19,6 +22,13 @@ public class Utils {
             .registerTypeAdapter(CartItem.class, new CartItemTypeAdapter())
             .create();
 
+    private static final String EPOCH = Long.toString(System.currentTimeMillis(), 36);
+
+    // Catalog responses may be reused this long before revalidating; carts and orders always revalidate
+    public static final String CATALOG_CACHE_CONTROL =
+            "public, max-age=" + Config.getInt("http.catalogMaxAge", 5) + ", must-revalidate";
+    public static final String PRIVATE_CACHE_CONTROL = "private, no-cache";
+
     public static String readRequestBody(HttpExchange exchange) throws IOException {
         try (BufferedReader br = new BufferedReader(
                 new InputStreamReader(exchange.getRequestBody()))) {
@@ -50,6 +60,9 @@ public class Utils {
     public static void sendResponse(HttpExchange exchange, String response, int statusCode) throws IOException {
         exchange.getResponseHeaders().set("Content-Type", "application/json");
         exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+        if (sendNotModified(exchange, statusCode)) {
+            return;
+        }
         byte[] responseBytes = response.getBytes(StandardCharsets.UTF_8);
         exchange.sendResponseHeaders(statusCode, responseBytes.length);
         try (OutputStream os = exchange.getResponseBody()) {
@@ -57,6 +70,168 @@ public class Utils {
         }
     }
 
+    /**
+     * Sends a body made of pre-serialized fragments, written one after the
+     * other without joining them into a single array first.
+     */
+    public static void sendResponse(HttpExchange exchange, List<byte[]> fragments, int statusCode) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+        if (sendNotModified(exchange, statusCode)) {
+            return;
+        }
+        long length = 0;
+        for (byte[] fragment : fragments) {
+            length += fragment.length;
+        }
+        exchange.sendResponseHeaders(statusCode, length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            for (byte[] fragment : fragments) {
+                os.write(fragment);
+            }
+        }
+    }
+
+    /** Writes a JSON body incrementally. */
+    @FunctionalInterface
+    public interface JsonBody {
+        void write(JsonWriter writer) throws IOException;
+    }
+
+    /** Writes a response body of any content type incrementally. */
+    @FunctionalInterface
+    public interface StreamBody {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Sends a JSON body with chunked transfer, written straight into the
+     * response stream, so its size never has to be known or held in memory.
+     * Once the headers are out an error can only cut the body short.
+     */
+    public static void sendStream(HttpExchange exchange, int statusCode, JsonBody body) throws IOException {
+        sendStream(exchange, statusCode, "application/json", out -> {
+            JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            writer.setIndent("  ");
+            body.write(writer);
+            writer.flush();
+        });
+    }
+
+    public static void sendStream(HttpExchange exchange, int statusCode, String contentType, StreamBody body)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(statusCode, 0);
+        try (OutputStream out = new BufferedOutputStream(exchange.getResponseBody(), 16 * 1024)) {
+            body.write(out);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Streaming response aborted: " + e.getMessage());
+            e.printStackTrace();
+            exchange.close();
+        }
+    }
+
+    /**
+     * Weak validator built from version counters. Catalog and entity versions
+     * restart with the process, so the process start time is part of the tag.
+     */
+    public static String weakETag(Object... parts) {
+        StringBuilder tag = new StringBuilder("W/\"").append(EPOCH);
+        for (Object part : parts) {
+            tag.append('-').append(part);
+        }
+        return tag.append('"').toString();
+    }
+
+    /**
+     * Validator part for request parameters: parameter order does not
+     * matter, and a SHA-256 prefix keeps distinct queries from sharing a tag
+     * the way a 32-bit hash would.
+     */
+    public static String queryDigest(Map<String, String> params) {
+        StringBuilder canonical = new StringBuilder();
+        // Keys and values never contain '&' or '=' after parseQueryString
+        for (Map.Entry<String, String> param : new TreeMap<>(params).entrySet()) {
+            canonical.append(param.getKey()).append('=').append(param.getValue()).append('&');
+        }
+        return digest(canonical.toString());
+    }
+
+    // 128 bits of SHA-256, URL-safe base64
+    public static String digest(String value) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, 16));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public static void setETag(HttpExchange exchange, String etag, String cacheControl) {
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.getResponseHeaders().set("Cache-Control", cacheControl);
+    }
+
+    /** Whether the request's If-None-Match already names {@code etag} (weak comparison). */
+    public static boolean matchesETag(HttpExchange exchange, String etag) {
+        String header = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (header == null || etag == null) {
+            return false;
+        }
+        String opaque = stripWeak(etag);
+        for (String candidate : header.split(",")) {
+            String value = candidate.trim();
+            if (value.equals("*") || stripWeak(value).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // A successful response whose ETag the client already holds goes out as a bodiless 304
+    private static boolean sendNotModified(HttpExchange exchange, int statusCode) throws IOException {
+        if (statusCode != 200 || !matchesETag(exchange, exchange.getResponseHeaders().getFirst("ETag"))) {
+            return false;
+        }
+        exchange.sendResponseHeaders(304, -1);
+        exchange.close();
+        return true;
+    }
+
+    private static String stripWeak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    /** Appends {@code value} as a quoted JSON string, or null. */
+    public static void appendJsonString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                case '\b' -> json.append("\\b");
+                case '\f' -> json.append("\\f");
+                default -> {
+                    // Other control characters, plus the separators that break inline scripts
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        json.append('"');
+    }
+
     public static String collectionToJson(Collection<?> items) {
         return gson.toJson(items);
     }